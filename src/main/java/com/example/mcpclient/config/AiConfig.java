@@ -7,6 +7,9 @@ import org.springframework.ai.ollama.api.OllamaOptions;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.scheduler.Schedulers;
 
 @Configuration
 public class AiConfig {
@@ -21,11 +24,24 @@ public class AiConfig {
     private Double temperature;
 
     /**
-     * Configure Ollama API
+     * How long Ollama keeps the model (and its KV cache) loaded between requests
+     */
+    @Value("${spring.ai.ollama.chat.options.keep-alive:30m}")
+    private String keepAlive;
+
+    /**
+     * Configure Ollama API.
+     * Streamed responses are delivered on a bounded-elastic thread instead of the HTTP event loop: native tool
+     * callbacks run inside the stream and wait for the MCP server, which must not stall the loop's other connections.
      */
     @Bean
     public OllamaApi ollamaApi() {
-        return new OllamaApi(ollamaBaseUrl);
+        WebClient.Builder webClientBuilder = WebClient.builder()
+                .filter((request, next) -> next.exchange(request)
+                        .map(response -> response.mutate()
+                                .body(body -> body.publishOn(Schedulers.boundedElastic()))
+                                .build()));
+        return new OllamaApi(ollamaBaseUrl, RestClient.builder(), webClientBuilder);
     }
 
     /**
@@ -38,6 +54,7 @@ public class AiConfig {
                 .withDefaultOptions(OllamaOptions.builder()
                         .withModel(model)
                         .withTemperature(temperature)
+                        .withKeepAlive(keepAlive)
                         .build())
                 .build();
     }
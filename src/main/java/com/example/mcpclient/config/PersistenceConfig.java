@@ -0,0 +1,42 @@
+package com.example.mcpclient.config;
+
+import com.example.mcpclient.persistence.FileSessionJournal;
+import com.example.mcpclient.persistence.NoopSessionJournal;
+import com.example.mcpclient.persistence.SessionJournal;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+@Configuration
+public class PersistenceConfig {
+
+    /**
+     * Journal sessions to local files so they survive restarts
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "chat.persistence.type", havingValue = "file")
+    public SessionJournal fileSessionJournal(
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${chat.persistence.directory:data/sessions}") String directory,
+            @Value("${chat.persistence.segment-bytes:67108864}") long segmentBytes,
+            @Value("${chat.persistence.max-batch:1024}") int maxBatch,
+            @Value("${chat.persistence.queue-capacity:65536}") int queueCapacity) throws IOException {
+        return new FileSessionJournal(Path.of(directory), segmentBytes, maxBatch, queueCapacity, objectMapper, meterRegistry);
+    }
+
+    /**
+     * Keep sessions in memory only
+     */
+    @Bean
+    @ConditionalOnProperty(name = "chat.persistence.type", havingValue = "none", matchIfMissing = true)
+    public SessionJournal noopSessionJournal() {
+        return new NoopSessionJournal();
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.mcpclient.config;
+
+import com.example.mcpclient.controller.ChatWebSocketHandler;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistration;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
+
+@Configuration
+@EnableWebSocket
+@RequiredArgsConstructor
+public class WebSocketConfig implements WebSocketConfigurer {
+
+    private final ChatWebSocketHandler chatWebSocketHandler;
+
+    @Value("${chat.websocket.path:/ws/chat}")
+    private String path;
+
+    /**
+     * Origin patterns allowed to open the socket besides the page's own origin; empty means same-origin only
+     */
+    @Value("${chat.websocket.allowed-origins:}")
+    private String[] allowedOrigins;
+
+    @Value("${chat.websocket.max-message-size:65536}")
+    private int maxMessageSize;
+
+    /**
+     * Close connections that have been silent this long (ms); the browser client reconnects on demand
+     */
+    @Value("${chat.websocket.idle-timeout:600000}")
+    private long idleTimeout;
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        WebSocketHandlerRegistration registration = registry.addHandler(chatWebSocketHandler, path);
+        if (allowedOrigins.length > 0) {
+            registration.setAllowedOriginPatterns(allowedOrigins);
+        }
+    }
+
+    /**
+     * Configure the servlet container's WebSocket limits
+     */
+    @Bean
+    public ServletServerContainerFactoryBean webSocketContainer() {
+        ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
+        container.setMaxTextMessageBufferSize(maxMessageSize);
+        container.setMaxSessionIdleTimeout(idleTimeout);
+        return container;
+    }
+}
@@ -2,28 +2,32 @@ package com.example.mcpclient.controller;
 
 import com.example.mcpclient.dto.ChatRequest;
 import com.example.mcpclient.dto.ChatResponse;
+import com.example.mcpclient.dto.MessageDelta;
+import com.example.mcpclient.dto.SessionPage;
 import com.example.mcpclient.model.ChatSession;
 import com.example.mcpclient.model.McpTool;
 import com.example.mcpclient.model.Message;
+import com.example.mcpclient.service.ChatTurnService;
 import com.example.mcpclient.service.McpClientService;
-import com.example.mcpclient.service.OllamaService;
 import com.example.mcpclient.service.SessionService;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.context.request.WebRequest;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
 
 @Slf4j
 @RestController
@@ -31,31 +35,29 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class ChatController {
 
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+
     private final SessionService sessionService;
     private final McpClientService mcpClientService;
-    private final OllamaService ollamaService;
+    private final ChatTurnService chatTurnService;
 
     /**
-     * Send a chat message with streaming response using Ollama
+     * Send a chat message with streaming response using Ollama.
+     * The response is a reactive stream of server-sent events, so no thread is held while the model,
+     * the tool decision or the MCP server are working; a client disconnect cancels the whole pipeline.
+     * Generation goes through admission control: 429 when the backend is saturated up front, a "busy"
+     * event when the request is rejected while queued. The WebSocket endpoint runs the same turn.
      */
     @PostMapping(value = "/chat", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public SseEmitter chatStream(@RequestBody ChatRequest request, HttpServletRequest req) {
+    public ResponseEntity<Flux<ServerSentEvent<String>>> chatStream(@RequestBody ChatRequest request, HttpServletRequest req) {
         log.info("Received streaming chat request for session: {}", request.getSessionId());
 
-        SseEmitter emitter = new SseEmitter(300000L); // 5 minute timeout
-
-        // Get or create session - THIS IS THE KEY FIX
-        Optional<ChatSession> sessionOpt = sessionService.getSession(request.getSessionId());
-        ChatSession session;
-
-        if (sessionOpt.isEmpty()) {
-            log.info("Session {} not found in backend, creating new session with this ID", request.getSessionId());
-            // Create session with the ID from frontend to maintain consistency
-            session = sessionService.createSessionWithId(request.getSessionId(), "Chat Session");
-            log.info("Created new session: {}", session.getId());
-        } else {
-            session = sessionOpt.get();
-            log.debug("Using existing session: {}", session.getId());
+        if (chatTurnService.isSaturated()) {
+            log.info("Ollama saturated, rejecting request for session: {}", request.getSessionId());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(chatTurnService.retryAfterSeconds()))
+                    .build();
         }
 
         String token = req.getHeader(HttpHeaders.AUTHORIZATION);
@@ -63,102 +65,29 @@ public class ChatController {
             token = token.replace("Bearer ", "");
         }
 
-        // Add user message to session
-        Message userMessage = new Message("user", request.getMessage());
-        session.addMessage(userMessage);
-
-        // Send user message confirmation
-        try {
-            emitter.send(SseEmitter.event()
-                    .name("userMessage")
-                    .data("{\"id\": \"" + userMessage.getId() + "\"}"));
-        } catch (IOException e) {
-            log.error("Error sending user message event", e);
-            emitter.completeWithError(e);
-            return emitter;
-        }
-
-        // Generate a message ID for the assistant's response
-        String assistantMessageId = UUID.randomUUID().toString();
-
-        // Send message start event
-        try {
-            emitter.send(SseEmitter.event()
-                    .name("start")
-                    .data("{\"messageId\": \"" + assistantMessageId + "\"}"));
-        } catch (IOException e) {
-            log.error("Error sending start event", e);
-            emitter.completeWithError(e);
-            return emitter;
-        }
-
-        final String finalToken = token;
-
-        // Process in background thread
-        new Thread(() -> {
-            try {
-                StringBuilder fullResponse = new StringBuilder();
-
-                // Stream response from Ollama
-                ollamaService.chatStream(
-                        request.getMessage(),
-                        session.getMessages(),
-                        finalToken,
-                        chunk -> {
-                            fullResponse.append(chunk);
-                            try {
-                                // Send each chunk to the client
-                                emitter.send(SseEmitter.event()
-                                        .name("chunk")
-                                        .data("{\"content\": \"" + escapeJson(chunk) + "\"}"));
-                            } catch (IOException e) {
-                                log.error("Error sending chunk", e);
-                                throw new RuntimeException(e);
-                            }
-                        }
-                );
-
-                // Add complete assistant message to session
-                Message assistantMessage = new Message("assistant", fullResponse.toString());
-                assistantMessage.setId(assistantMessageId);
-                session.addMessage(assistantMessage);
-
-                // Send completion event
-                emitter.send(SseEmitter.event()
-                        .name("done")
-                        .data("{\"messageId\": \"" + assistantMessageId + "\"}"));
-
-                emitter.complete();
-                log.info("Streaming completed for session: {}", request.getSessionId());
-
-            } catch (Exception e) {
-                log.error("Error during streaming", e);
-                try {
-                    emitter.send(SseEmitter.event()
-                            .name("error")
-                            .data("{\"error\": \"" + escapeJson(e.getMessage()) + "\"}"));
-                } catch (IOException ioException) {
-                    log.error("Error sending error event", ioException);
-                }
-                emitter.completeWithError(e);
-            }
-        }).start();
-
-        return emitter;
+        return ResponseEntity.ok(chatTurnService.startTurn(request.getSessionId(), request.getMessage(), token,
+                request.isReplacePending()));
     }
 
     /**
-     * Helper method to escape JSON strings
+     * Resume an assistant stream after the event named in Last-Event-ID
      */
-    private String escapeJson(String str) {
-        if (str == null) return "";
-        return str.replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r")
-                .replace("\t", "\\t")
-                .replace("\b", "\\b")
-                .replace("\f", "\\f");
+    @GetMapping(value = "/chat/{messageId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<ServerSentEvent<String>>> resumeStream(
+            @PathVariable String messageId,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        long after = 0;
+        if (lastEventId != null) {
+            try {
+                after = Long.parseLong(lastEventId.trim());
+            } catch (NumberFormatException e) {
+                log.debug("Ignoring invalid Last-Event-ID: {}", lastEventId);
+            }
+        }
+
+        return chatTurnService.resume(messageId, after)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
     }
 
     /**
@@ -174,11 +103,29 @@ public class ChatController {
     }
 
     /**
-     * Get all sessions
+     * List session summaries, newest first, one page at a time.
+     * Pass the returned nextCursor to get the following page. The ETag changes whenever any session
+     * changes, so polling with If-None-Match costs a 304 while nothing happened.
      */
     @GetMapping("/sessions")
-    public ResponseEntity<List<ChatSession>> getAllSessions() {
-        return ResponseEntity.ok(sessionService.getAllSessions());
+    public ResponseEntity<SessionPage> listSessions(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit,
+            WebRequest webRequest) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        String etag = "W/\"v" + sessionService.getVersionTag() + "-" + (cursor != null ? cursor : "") + "-" + pageSize + "\"";
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+
+        try {
+            return ResponseEntity.ok()
+                    .eTag(etag)
+                    .body(sessionService.listSessions(cursor, pageSize));
+        } catch (IllegalArgumentException e) {
+            log.debug("Rejecting session listing: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     /**
@@ -191,6 +138,34 @@ public class ChatController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    /**
+     * Messages of a session after the given message, so clients only fetch what they have not seen.
+     * Without after, or when that message is no longer in the session (it was cleared), the full list is
+     * returned with reset set. The ETag follows the session's revision.
+     */
+    @GetMapping("/sessions/{sessionId}/messages")
+    public ResponseEntity<MessageDelta> getMessages(
+            @PathVariable String sessionId,
+            @RequestParam(required = false) String after,
+            WebRequest webRequest) {
+        Optional<ChatSession> sessionOpt = sessionService.getSession(sessionId);
+        if (sessionOpt.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        ChatSession session = sessionOpt.get();
+        // Read the revision first: a change racing with this request then only makes the ETag stale, never the body
+        String etag = "W/\"" + sessionId + "-" + session.getRevisionTag() + "-" + (after != null ? after : "") + "\"";
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+
+        MessageDelta delta = session.messagesAfter(after)
+                .map(messages -> new MessageDelta(messages, false))
+                .orElseGet(() -> new MessageDelta(session.getMessages(), true));
+        return ResponseEntity.ok().eTag(etag).body(delta);
+    }
+
     /**
      * Delete a session
      */
@@ -231,31 +206,36 @@ public class ChatController {
      * Health check
      */
     @GetMapping("/health")
-    public ResponseEntity<Map<String, Object>> health() {
-        Map<String, Object> health = new HashMap<>();
-        health.put("status", "UP");
-
-        Boolean mcpServerHealthy = mcpClientService.checkServerHealth().block();
-        health.put("mcpServer", mcpServerHealthy ? "UP" : "DOWN");
-        health.put("aiProvider", "Ollama");
-
-        return ResponseEntity.ok(health);
+    public Mono<ResponseEntity<Map<String, Object>>> health() {
+        return mcpClientService.checkServerHealth()
+                .defaultIfEmpty(false)
+                .map(mcpServerHealthy -> {
+                    Map<String, Object> health = new HashMap<>();
+                    health.put("status", "UP");
+                    health.put("mcpServer", mcpServerHealthy ? "UP" : "DOWN");
+                    health.put("aiProvider", "Ollama");
+                    return ResponseEntity.ok(health);
+                });
     }
 
     /**
      * Get available tools from MCP server
      */
     @GetMapping("/tools")
-    public ResponseEntity<?> getTools() {
-        try {
-            log.debug("Fetching tools from MCP server");
-            List<McpTool> toolsList = mcpClientService.listTools().block();
-            log.info("Retrieved {} tools from MCP server", toolsList != null ? toolsList.size() : 0);
-            return ResponseEntity.ok(toolsList != null ? toolsList : Collections.emptyList());
-        } catch (Exception e) {
-            log.error("Error fetching tools from MCP server", e);
-            return ResponseEntity.ok(Collections.emptyList());
+    public Mono<ResponseEntity<List<McpTool>>> getTools(@RequestParam(defaultValue = "false") boolean refresh) {
+        log.debug("Fetching tools from MCP server");
+        if (refresh) {
+            mcpClientService.invalidateToolCatalog();
         }
+        return mcpClientService.listTools()
+                .map(toolsList -> {
+                    log.info("Retrieved {} tools from MCP server", toolsList.size());
+                    return ResponseEntity.ok(toolsList);
+                })
+                .onErrorResume(e -> {
+                    log.error("Error fetching tools from MCP server", e);
+                    return Mono.just(ResponseEntity.ok(Collections.<McpTool>emptyList()));
+                });
     }
 
     /**
@@ -279,9 +259,7 @@ public class ChatController {
             }
 
             ChatSession session = sessionOpt.get();
-            Optional<Message> messageOpt = session.getMessages().stream()
-                    .filter(msg -> msg.getId().equals(messageId))
-                    .findFirst();
+            Optional<Message> messageOpt = session.findMessage(messageId);
 
             if (messageOpt.isEmpty()) {
                 return ResponseEntity.badRequest()
@@ -289,7 +267,7 @@ public class ChatController {
             }
 
             Message message = messageOpt.get();
-            message.setLiked(liked);
+            sessionService.recordFeedback(session, message, liked);
 
             log.info("Updated message feedback: {} -> {}", messageId, liked);
             return ResponseEntity.ok(ChatResponse.success(message));
@@ -0,0 +1,251 @@
+package com.example.mcpclient.controller;
+
+import com.example.mcpclient.service.ChatTurnService;
+import com.example.mcpclient.service.SseEventEncoder;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Chat over one long-lived WebSocket per browser tab.
+ * Any number of sessions and concurrent turns share the connection; every frame carries the client's
+ * turn reference. Turns run through the same pipeline as POST /api/chat, so admission, coalescing,
+ * resumption over HTTP and saving the answer behave identically.
+ * <p>
+ * Client frames: {@code {"t":"m","r":ref,"s":sessionId,"q":message}} starts a turn (an optional "a" carries
+ * the JWT when the handshake had no Authorization header, "p":true replaces the session's pending turns),
+ * {@code {"t":"x","r":ref}} cancels one.
+ * Server frames: {@code {"t":type,"r":ref,"i":eventId,"d":payload}} with the type u(serMessage), s(tart),
+ * c(hunk), d(one), e(rror) or b(usy) and the same payload as the corresponding SSE event.
+ * <p>
+ * Sends are serialized per connection with a bounded outgoing buffer and a send time limit; a connection
+ * that cannot keep up is closed rather than buffering without limit. Each turn sends on its own worker
+ * and requests only a few events ahead, so a slow socket holds back its turns instead of piling up frames.
+ */
+@Slf4j
+@Component
+public class ChatWebSocketHandler extends TextWebSocketHandler {
+
+    private static final String START_TURN = "m";
+    private static final String CANCEL_TURN = "x";
+    private static final int SEND_PREFETCH = 8;
+
+    private final ChatTurnService chatTurnService;
+    private final ObjectMapper objectMapper;
+    private final int sendTimeLimit;
+    private final int bufferSizeLimit;
+    private final int maxTurnsPerConnection;
+    private final Map<String, Connection> connections = new ConcurrentHashMap<>();
+
+    private final Counter turns;
+    private final Counter rejected;
+
+    public ChatWebSocketHandler(
+            ChatTurnService chatTurnService,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${chat.websocket.send-time-limit:10000}") int sendTimeLimit,
+            @Value("${chat.websocket.buffer-size-limit:524288}") int bufferSizeLimit,
+            @Value("${chat.websocket.max-turns-per-connection:8}") int maxTurnsPerConnection) {
+        this.chatTurnService = chatTurnService;
+        this.objectMapper = objectMapper;
+        this.sendTimeLimit = sendTimeLimit;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.maxTurnsPerConnection = maxTurnsPerConnection;
+        this.turns = Counter.builder("chat.websocket.turns").register(meterRegistry);
+        this.rejected = Counter.builder("chat.websocket.turns.rejected").register(meterRegistry);
+        Gauge.builder("chat.websocket.connections", connections, Map::size).register(meterRegistry);
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        String token = session.getHandshakeHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (token != null) {
+            token = token.replace("Bearer ", "");
+        }
+
+        WebSocketSession concurrent = new ConcurrentWebSocketSessionDecorator(session, sendTimeLimit, bufferSizeLimit);
+        connections.put(session.getId(), new Connection(concurrent, token));
+        log.info("WebSocket connection {} opened", session.getId());
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        Connection connection = connections.get(session.getId());
+        if (connection == null) {
+            return;
+        }
+
+        JsonNode frame;
+        try {
+            frame = objectMapper.readTree(message.getPayload());
+        } catch (JsonProcessingException e) {
+            connection.send(null, SseEventEncoder.error("Invalid frame: " + e.getOriginalMessage()));
+            return;
+        }
+        String type = frame.path("t").asText();
+        String ref = frame.path("r").asText(null);
+
+        switch (type) {
+            case START_TURN -> startTurn(connection, ref, frame);
+            case CANCEL_TURN -> connection.cancel(ref);
+            default -> connection.send(ref, SseEventEncoder.error("Unknown frame type: " + type));
+        }
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        log.debug("WebSocket transport error on connection {}: {}", session.getId(), exception.getMessage());
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        Connection connection = connections.remove(session.getId());
+        if (connection != null) {
+            // Same as an SSE disconnect: the answers keep running for the grace period and can be resumed
+            connection.cancelAll();
+        }
+        log.info("WebSocket connection {} closed: {}", session.getId(), status);
+    }
+
+    private void startTurn(Connection connection, String ref, JsonNode frame) {
+        String sessionId = frame.path("s").asText(null);
+        String message = frame.path("q").asText(null);
+        if (ref == null || sessionId == null || message == null) {
+            connection.send(ref, SseEventEncoder.error("A turn needs r, s and q"));
+            return;
+        }
+        log.info("Received WebSocket chat turn {} for session: {}", ref, sessionId);
+
+        if (connection.turns.size() >= maxTurnsPerConnection || connection.turns.containsKey(ref)) {
+            rejected.increment();
+            connection.send(ref, SseEventEncoder.busy("Too many turns on this connection",
+                    chatTurnService.retryAfterSeconds()));
+            return;
+        }
+        if (chatTurnService.isSaturated()) {
+            log.info("Ollama saturated, rejecting WebSocket turn for session: {}", sessionId);
+            rejected.increment();
+            connection.send(ref, SseEventEncoder.busy("The assistant is busy, please retry shortly",
+                    chatTurnService.retryAfterSeconds()));
+            return;
+        }
+
+        String token = frame.hasNonNull("a") ? frame.get("a").asText() : connection.token;
+        turns.increment();
+        connection.run(ref, chatTurnService.startTurn(sessionId, message, token, frame.path("p").asBoolean(false)));
+    }
+
+    /**
+     * The compact frame for one event; the SSE payload is already JSON and is embedded as is
+     */
+    private static String frame(String ref, ServerSentEvent<String> event) {
+        String data = event.data();
+        StringBuilder sb = new StringBuilder((data != null ? data.length() : 0) + 48);
+        sb.append("{\"t\":\"").append(frameType(event.event())).append("\",\"r\":\"");
+        SseEventEncoder.escape(ref, sb);
+        sb.append('"');
+        if (event.id() != null) {
+            sb.append(",\"i\":").append(event.id());
+        }
+        sb.append(",\"d\":").append(data != null ? data : "{}").append('}');
+        return sb.toString();
+    }
+
+    private static char frameType(String eventName) {
+        if (eventName == null) {
+            return 'c';
+        }
+        return switch (eventName) {
+            case SseEventEncoder.USER_MESSAGE -> 'u';
+            case SseEventEncoder.START -> 's';
+            case SseEventEncoder.DONE -> 'd';
+            case SseEventEncoder.ERROR -> 'e';
+            case SseEventEncoder.BUSY -> 'b';
+            default -> 'c';
+        };
+    }
+
+    /**
+     * One WebSocket and the turns it is currently streaming, by client reference
+     */
+    private static class Connection {
+        final WebSocketSession session;
+        final String token;
+        final Map<String, Disposable> turns = new ConcurrentHashMap<>();
+
+        Connection(WebSocketSession session, String token) {
+            this.session = session;
+            this.token = token;
+        }
+
+        /**
+         * Register the turn, then subscribe. The turn may finish, or be cancelled by the client, before
+         * subscribe() returns; a slot registered up front is removed or disposed correctly either way.
+         */
+        void run(String ref, Flux<ServerSentEvent<String>> events) {
+            Disposable.Swap slot = Disposables.swap();
+            turns.put(ref, slot);
+            slot.update(events
+                    .publishOn(Schedulers.boundedElastic(), SEND_PREFETCH)
+                    .doOnNext(event -> sendOrFail(ref, event))
+                    .doFinally(signal -> turns.remove(ref, slot))
+                    .subscribe(event -> { }, e -> log.info("WebSocket turn {} on connection {} stopped: {}",
+                            ref, session.getId(), e.getMessage())));
+        }
+
+        void cancel(String ref) {
+            Disposable subscription = ref != null ? turns.remove(ref) : null;
+            if (subscription != null) {
+                subscription.dispose();
+                log.info("WebSocket turn {} cancelled by client", ref);
+            }
+        }
+
+        void cancelAll() {
+            turns.values().forEach(Disposable::dispose);
+            turns.clear();
+        }
+
+        void send(String ref, ServerSentEvent<String> event) {
+            try {
+                sendOrFail(ref, event);
+            } catch (UncheckedIOException e) {
+                log.debug("Could not send to WebSocket connection {}: {}", session.getId(), e.getMessage());
+            }
+        }
+
+        private void sendOrFail(String ref, ServerSentEvent<String> event) {
+            if (!session.isOpen()) {
+                throw new UncheckedIOException(new IOException("WebSocket connection closed"));
+            }
+            try {
+                session.sendMessage(new TextMessage(frame(ref, event)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -10,4 +10,5 @@ import lombok.NoArgsConstructor;
 public class ChatRequest {
     private String sessionId;
     private String message;
+    private boolean replacePending; // replace this session's turns still waiting instead of queueing behind them
 }
@@ -0,0 +1,21 @@
+package com.example.mcpclient.dto;
+
+import com.example.mcpclient.model.Message;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Messages of a session after the one the client already has.
+ * When that message is no longer in the session (e.g. it was cleared) reset is true and the list holds
+ * all messages, replacing what the client has.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageDelta {
+    private List<Message> messages;
+    private boolean reset;
+}
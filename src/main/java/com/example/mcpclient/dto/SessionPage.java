@@ -0,0 +1,18 @@
+package com.example.mcpclient.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of session summaries, newest first; nextCursor is null on the last page
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SessionPage {
+    private List<SessionSummary> sessions;
+    private String nextCursor;
+}
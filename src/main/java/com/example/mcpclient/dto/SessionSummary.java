@@ -0,0 +1,27 @@
+package com.example.mcpclient.dto;
+
+import com.example.mcpclient.model.ChatSession;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A session without its messages, for listings
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SessionSummary {
+    private String id;
+    private String name;
+    private LocalDateTime createdAt;
+    private LocalDateTime lastActivity;
+    private int messageCount;
+
+    public static SessionSummary of(ChatSession session) {
+        return new SessionSummary(session.getId(), session.getName(), session.getCreatedAt(),
+                session.getLastActivity(), session.getMessageCount());
+    }
+}
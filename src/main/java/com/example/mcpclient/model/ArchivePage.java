@@ -0,0 +1,93 @@
+package com.example.mcpclient.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * One off-heap page of archived message contents, owned by the archive of one session.
+ * Entries are appended by the {@link ContentArchive} under its lock and never change afterwards. Their
+ * offset, stored length and raw length are packed into one int array; an entry whose stored length equals
+ * its raw length was not worth compressing and holds plain UTF-8. Reads take no lock: a message only
+ * refers to its page after the entry is written.
+ * <p>
+ * The page is never freed explicitly: every archived message refers to it, so its memory is reclaimed by the
+ * garbage collector once the last of those messages is unreachable, and a message read after its session
+ * was cleared or evicted still gets its content.
+ */
+final class ArchivePage {
+
+    private static final int INDEX_FIELDS = 3; // offset, stored length, raw length
+    private static final int FIRST_INDEX_ENTRIES = 16;
+
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(Inflater::new);
+
+    private final ByteBuffer data;
+    private volatile int[] index = new int[FIRST_INDEX_ENTRIES * INDEX_FIELDS];
+    private int count;
+    private int used;
+
+    ArchivePage(int capacity) {
+        this.data = ByteBuffer.allocateDirect(capacity);
+    }
+
+    int capacity() {
+        return data.capacity();
+    }
+
+    boolean fits(int length) {
+        return used + length <= data.capacity();
+    }
+
+    /**
+     * Append an entry; called by the archive only
+     */
+    int add(byte[] stored, int storedLength, int rawLength) {
+        int[] entries = index;
+        if ((count + 1) * INDEX_FIELDS > entries.length) {
+            entries = Arrays.copyOf(entries, entries.length * 2);
+            index = entries;
+        }
+
+        data.put(used, stored, 0, storedLength);
+        int base = count * INDEX_FIELDS;
+        entries[base] = used;
+        entries[base + 1] = storedLength;
+        entries[base + 2] = rawLength;
+        used += storedLength;
+        return count++;
+    }
+
+    String read(int entry) {
+        int[] entries = index;
+        int base = entry * INDEX_FIELDS;
+        ByteBuffer stored = data.slice(entries[base], entries[base + 1]);
+        int rawLength = entries[base + 2];
+        if (entries[base + 1] == rawLength) {
+            return StandardCharsets.UTF_8.decode(stored).toString();
+        }
+
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(stored);
+        byte[] raw = new byte[rawLength];
+        try {
+            int length = 0;
+            while (length < rawLength && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, length, rawLength - length);
+                if (inflated == 0 && inflater.needsInput()) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != rawLength) {
+                throw new IllegalStateException("Archived message is truncated");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Archived message is corrupt", e);
+        }
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+}
@@ -1,24 +1,75 @@
 package com.example.mcpclient.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 @Data
 public class ChatSession {
+
+    // Rough per-message cost of the Message object, its id, role and timestamp
+    private static final long MESSAGE_OVERHEAD_BYTES = 200;
+    private static final long SESSION_OVERHEAD_BYTES = 500;
+
     private String id;
     private String name;
-    private List<Message> messages;
     private LocalDateTime createdAt;
     private LocalDateTime lastActivity;
 
+    // Running summary of the oldest messages, maintained by the history manager
+    @JsonIgnore
+    private volatile String summary;
+    @JsonIgnore
+    private volatile int summarizedCount; // number of leading messages covered by the summary
+    @JsonIgnore
+    private volatile int historyStart; // first message of the prompt window, kept stable between turns
+    @JsonIgnore
+    private volatile ResultCursor resultCursor; // remaining pages of the last tool result
+    @JsonIgnore
+    @Setter(AccessLevel.NONE)
+    private volatile long clearGeneration; // bumped after every clear, so work based on older messages can tell
+
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile MessageLog messageLog = new MessageLog(); // replaced, not emptied, on clear
+
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final AtomicLong messageBytes = new AtomicLong(); // estimated heap size of the messages
+
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final AtomicLong revision = new AtomicLong(); // bumped on every change clients can see
+
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final String incarnation = Long.toString(ThreadLocalRandom.current().nextLong() >>> 1, 36); // per-instance nonce: a restored session restarts its revision
+
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile HistoryDigest historyDigest; // digest of the longest prefix hashed so far
+
     public ChatSession() {
         this.id = UUID.randomUUID().toString();
         this.name = "New Chat";
-        this.messages = new ArrayList<>();
         this.createdAt = LocalDateTime.now();
         this.lastActivity = LocalDateTime.now();
     }
@@ -28,12 +79,182 @@ public class ChatSession {
         this.name = name;
     }
 
+    /**
+     * Immutable snapshot of the messages; safe to iterate while turns keep appending
+     */
+    public List<Message> getMessages() {
+        return messageLog.snapshot();
+    }
+
+    public Optional<Message> findMessage(String messageId) {
+        return messageLog.findById(messageId);
+    }
+
+    @JsonIgnore
+    public int getMessageCount() {
+        return messageLog.size();
+    }
+
+    /**
+     * The messages after the one with the given id; empty if that message is not in the session
+     */
+    public Optional<List<Message>> messagesAfter(String messageId) {
+        MessageLog log = messageLog;
+        int index = log.indexOf(messageId);
+        if (index < 0) {
+            return Optional.empty();
+        }
+        List<Message> messages = log.snapshot();
+        return Optional.of(messages.subList(index + 1, messages.size()));
+    }
+
+    /**
+     * Digest of the roles and contents of the first count messages.
+     * Each digest chains the previous one with the next message, and the latest one is kept, so repeated
+     * calls for a growing history only hash the messages added since the last call.
+     */
+    public byte[] historyDigest(int count) {
+        MessageLog log = messageLog;
+        List<Message> messages = log.snapshot();
+        int end = Math.min(count, messages.size());
+
+        HistoryDigest cached = historyDigest;
+        if (cached == null || cached.log != log || cached.count > end) {
+            cached = new HistoryDigest(log, 0, new byte[0]);
+        }
+
+        byte[] digest = cached.digest;
+        for (int i = cached.count; i < end; i++) {
+            digest = chain(digest, messages.get(i));
+        }
+        if (end > cached.count) {
+            historyDigest = new HistoryDigest(log, end, digest);
+        }
+        return digest;
+    }
+
+    /**
+     * Changes with every message, clear, rename or feedback; used to tell clients nothing changed
+     */
+    @JsonIgnore
+    public long getRevision() {
+        return revision.get();
+    }
+
+    /**
+     * The revision qualified by this instance's nonce; unlike the bare revision it never repeats when the session
+     * is restored from the journal or recreated after a restart, so it is safe to use in ETags
+     */
+    @JsonIgnore
+    public String getRevisionTag() {
+        return incarnation + "." + revision.get();
+    }
+
+    public void markChanged() {
+        this.revision.incrementAndGet();
+    }
+
     public void addMessage(Message message) {
-        this.messages.add(message);
+        this.messageLog.append(message);
+        this.messageBytes.addAndGet(estimateBytes(message));
+        this.revision.incrementAndGet();
         this.lastActivity = LocalDateTime.now();
     }
 
+    /**
+     * Drop all messages. Synchronized with the history manager, which applies background summaries while holding
+     * the session's monitor, so a summary of the old messages cannot land after the clear.
+     */
+    public synchronized void clearMessages() {
+        MessageLog cleared = this.messageLog;
+        this.messageLog = new MessageLog();
+        this.clearGeneration++; // after the swap: a reader seeing the old generation may only have seen the old log
+        cleared.releaseArchive();
+        this.messageBytes.set(0);
+        this.revision.incrementAndGet();
+        this.summary = null;
+        this.summarizedCount = 0;
+        this.historyStart = 0;
+        this.resultCursor = null;
+        this.lastActivity = LocalDateTime.now();
+    }
+
+    /**
+     * Move the content of all but the newest keepRecent messages off-heap; it is inflated again when read
+     *
+     * @return the number of characters taken off the heap
+     */
+    public long archiveMessages(Supplier<ContentArchive> archives, int keepRecent, int minChars) {
+        MessageLog log = messageLog;
+        long chars = log.archive(archives, log.size() - keepRecent, minChars);
+        if (chars > 0) {
+            // The log may have been cleared meanwhile, which already reset the estimate
+            messageBytes.accumulateAndGet(2 * chars, (bytes, freed) -> Math.max(0, bytes - freed));
+        }
+        return chars;
+    }
+
+    /**
+     * Let go of the off-heap contents of the messages; called when the session leaves the store
+     */
+    public void releaseArchive() {
+        messageLog.releaseArchive();
+    }
+
     public void updateLastActivity() {
         this.lastActivity = LocalDateTime.now();
     }
+
+    /**
+     * Estimated memory of the session: message contents on the heap, archived ones off it, the summary and
+     * the paged tool result
+     */
+    @JsonIgnore
+    public long getEstimatedBytes() {
+        long bytes = SESSION_OVERHEAD_BYTES + messageBytes.get() + messageLog.getOffHeapBytes() + stringBytes(summary);
+        ResultCursor cursor = resultCursor;
+        if (cursor != null && cursor.getResult() != null) {
+            bytes += stringBytes(cursor.getResult().getContent()) + stringBytes(cursor.getQuestion());
+        }
+        return bytes;
+    }
+
+    private static long estimateBytes(Message message) {
+        return MESSAGE_OVERHEAD_BYTES + stringBytes(message.getContent());
+    }
+
+    private static byte[] chain(byte[] previous, Message message) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            sha256.update(previous);
+            if (message.getRole() != null) {
+                sha256.update(message.getRole().getBytes(StandardCharsets.UTF_8));
+            }
+            sha256.update((byte) 0);
+            if (message.getContent() != null) {
+                sha256.update(message.getContent().getBytes(StandardCharsets.UTF_8));
+            }
+            sha256.update((byte) 0);
+            return sha256.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static final class HistoryDigest {
+        final MessageLog log; // the digest is void once the messages are cleared
+        final int count;
+        final byte[] digest;
+
+        HistoryDigest(MessageLog log, int count, byte[] digest) {
+            this.log = log;
+            this.count = count;
+            this.digest = digest;
+        }
+    }
+
+    // Strings are 2 bytes per char at worst (UTF-16); assume that to stay on the safe side
+    private static long stringBytes(String value) {
+        return value != null ? 2L * value.length() : 0;
+    }
 }
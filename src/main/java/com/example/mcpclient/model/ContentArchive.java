@@ -0,0 +1,119 @@
+package com.example.mcpclient.model;
+
+import java.lang.ref.Cleaner;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+/**
+ * Compressed off-heap storage for the content of the old messages of one session.
+ * Contents are deflated and appended to direct-memory pages owned by this archive; the message keeps only
+ * its page and entry number and inflates the content again when it is read. Pages start small and double
+ * up to the maximum page size, so short sessions do not hold a whole large page. The session releases its
+ * archive when it is deleted, evicted or cleared: the archive stops counting towards the session and takes
+ * no more content. The pages themselves stay readable for messages still in use (a response being
+ * serialized, a background summary) and their memory is reclaimed once those are unreachable; the shared
+ * usage follows the pages, not the archive.
+ */
+public final class ContentArchive {
+
+    private static final Cleaner CLEANER = Cleaner.create();
+    private static final int FIRST_PAGE_BYTES = 4096;
+
+    private final int maxPageBytes;
+    private final Usage usage;
+    private final AtomicLong ownedBytes = new AtomicLong(); // direct memory of this archive's pages until released
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private byte[] buffer = new byte[0];
+    private ArchivePage current;
+    private boolean released;
+
+    public ContentArchive(int maxPageBytes, Usage usage) {
+        this.maxPageBytes = maxPageBytes;
+        this.usage = usage;
+    }
+
+    /**
+     * Move the message's content into the archive.
+     *
+     * @return the number of characters taken off the heap
+     */
+    public synchronized int archive(Message message) {
+        String content = message.getContent();
+        if (released || content == null || content.isEmpty() || message.isArchived()) {
+            return 0;
+        }
+
+        byte[] raw = content.getBytes(StandardCharsets.UTF_8);
+        if (buffer.length < raw.length) {
+            buffer = new byte[Math.max(raw.length, buffer.length * 2)];
+        }
+
+        // Keep the plain bytes when deflating does not make them smaller
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        int compressed = 0;
+        while (!deflater.finished() && compressed < raw.length) {
+            compressed += deflater.deflate(buffer, compressed, raw.length - compressed);
+        }
+        boolean deflated = deflater.finished() && compressed < raw.length;
+        byte[] stored = deflated ? buffer : raw;
+        int storedLength = deflated ? compressed : raw.length;
+
+        if (current == null || !current.fits(storedLength)) {
+            current = newPage(storedLength);
+        }
+        int entry = current.add(stored, storedLength, raw.length);
+        message.archived(current, entry);
+        usage.archivedMessages.incrementAndGet();
+        return content.length();
+    }
+
+    /**
+     * Direct memory held by this archive's pages
+     */
+    public long getOffHeapBytes() {
+        return ownedBytes.get();
+    }
+
+    /**
+     * Archive nothing more and stop counting the pages towards the session; archived messages stay readable
+     */
+    public synchronized void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        current = null;
+        deflater.end();
+        ownedBytes.set(0);
+    }
+
+    private ArchivePage newPage(int minBytes) {
+        int next = current == null ? FIRST_PAGE_BYTES : Math.min(2 * current.capacity(), maxPageBytes);
+        ArchivePage page = new ArchivePage(Math.max(next, minBytes));
+        int capacity = page.capacity();
+        ownedBytes.addAndGet(capacity);
+        usage.offHeapBytes.addAndGet(capacity);
+        AtomicLong offHeapBytes = usage.offHeapBytes;
+        CLEANER.register(page, () -> offHeapBytes.addAndGet(-capacity));
+        return page;
+    }
+
+    /**
+     * Totals over all archives sharing it, for metrics
+     */
+    public static final class Usage {
+        private final AtomicLong offHeapBytes = new AtomicLong();
+        private final AtomicLong archivedMessages = new AtomicLong();
+
+        public long getOffHeapBytes() {
+            return offHeapBytes.get();
+        }
+
+        public long getArchivedMessages() {
+            return archivedMessages.get();
+        }
+    }
+}
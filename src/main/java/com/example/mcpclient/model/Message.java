@@ -1,21 +1,37 @@
 package com.example.mcpclient.model;
 
-import lombok.AllArgsConstructor;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
 
 import java.time.LocalDateTime;
 
 @Data
 @NoArgsConstructor
-@AllArgsConstructor
 public class Message {
     private String id;
     private String role; // "user" or "assistant"
-    private String content;
+    private volatile String content; // null once archived
     private LocalDateTime timestamp;
     private Boolean liked; // null = no feedback, true = thumbs up, false = thumbs down
 
+    // Where the content lives once it has been moved off-heap
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private volatile ArchivePage archivePage;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private int archiveEntry;
+
     public Message(String role, String content) {
         this.role = role;
         this.content = content;
@@ -23,4 +39,42 @@ public class Message {
         this.id = java.util.UUID.randomUUID().toString();
         this.liked = null; // No feedback by default
     }
+
+    public Message(String id, String role, String content, LocalDateTime timestamp, Boolean liked) {
+        this.id = id;
+        this.role = role;
+        this.content = content;
+        this.timestamp = timestamp;
+        this.liked = liked;
+    }
+
+    /**
+     * The content, inflated from the archive if it was moved there
+     */
+    public String getContent() {
+        String text = content;
+        if (text != null) {
+            return text;
+        }
+        ArchivePage page = archivePage;
+        // No page means the content was set again after this read started; it is visible now
+        return page != null ? page.read(archiveEntry) : content;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+        this.archivePage = null;
+    }
+
+    @JsonIgnore
+    public boolean isArchived() {
+        return archivePage != null;
+    }
+
+    // The entry is written before the page is published, and the page before the content is dropped
+    void archived(ArchivePage page, int entry) {
+        this.archiveEntry = entry;
+        this.archivePage = page;
+        this.content = null;
+    }
 }
@@ -0,0 +1,175 @@
+package com.example.mcpclient.model;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Append-only message list that is safe to read while turns append to it.
+ * Messages live in chunks that double in size and are never copied or moved. An append reserves a
+ * position, fills its slot, and then publishes the new size, in order, so the published size always
+ * covers a gap-free prefix. A snapshot is just that size: an immutable list view that shares the
+ * chunks. Messages are also indexed by id.
+ */
+public final class MessageLog {
+
+    private static final int FIRST_CHUNK_BITS = 4; // first chunk holds 16 messages
+    private static final int MAX_CHUNKS = Integer.SIZE - 1 - FIRST_CHUNK_BITS;
+    private static final int CAPACITY = (1 << FIRST_CHUNK_BITS) * ((1 << MAX_CHUNKS) - 1);
+
+    private final AtomicReferenceArray<Message[]> chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+    private final AtomicInteger reserved = new AtomicInteger();
+    private final AtomicInteger published = new AtomicInteger();
+    private final Map<String, Integer> positions = new ConcurrentHashMap<>();
+    private final Object archiveLock = new Object();
+    private volatile ContentArchive archive; // off-heap contents of this log's messages, created on demand
+    private boolean archiveReleased;
+    private int archivedUpTo; // messages before this have been offered to the archive
+
+    /**
+     * Append a message; visible to snapshots taken after this returns
+     */
+    public void append(Message message) {
+        int index = reserved.getAndIncrement();
+        if (index < 0 || index >= CAPACITY) {
+            throw new IllegalStateException("Message log is full");
+        }
+
+        chunk(chunkOf(index))[offsetOf(index)] = message;
+        if (message.getId() != null) {
+            positions.put(message.getId(), index);
+        }
+
+        // Publish after every earlier append has published, so readers never see an unfilled slot
+        while (!published.compareAndSet(index, index + 1)) {
+            Thread.onSpinWait();
+        }
+    }
+
+    public int size() {
+        return published.get();
+    }
+
+    /**
+     * Immutable view of the messages appended so far; later appends do not show up in it
+     */
+    public List<Message> snapshot() {
+        return new Snapshot(published.get());
+    }
+
+    public Optional<Message> findById(String id) {
+        int index = indexOf(id);
+        return index >= 0 ? Optional.of(get(index)) : Optional.empty();
+    }
+
+    /**
+     * Position of the message with the id, or -1 if it is not (yet) in the log
+     */
+    public int indexOf(String id) {
+        if (id == null) {
+            return -1;
+        }
+        Integer index = positions.get(id);
+        return index != null && index < published.get() ? index : -1;
+    }
+
+    /**
+     * Move the content of the messages before end into this log's archive (created on first use), leaving
+     * those shorter than minChars. Each message is offered once.
+     *
+     * @return the number of characters taken off the heap
+     */
+    public long archive(Supplier<ContentArchive> archives, int end, int minChars) {
+        synchronized (archiveLock) {
+            if (archiveReleased) {
+                return 0;
+            }
+
+            int limit = Math.min(end, published.get());
+            long chars = 0;
+            for (int i = archivedUpTo; i < limit; i++) {
+                Message message = get(i);
+                if (!message.isArchived() && message.getContent() != null && message.getContent().length() >= minChars) {
+                    if (archive == null) {
+                        archive = archives.get();
+                    }
+                    chars += archive.archive(message);
+                }
+            }
+            if (limit > archivedUpTo) {
+                archivedUpTo = limit;
+            }
+            return chars;
+        }
+    }
+
+    /**
+     * Direct memory held for the archived messages
+     */
+    public long getOffHeapBytes() {
+        ContentArchive current = archive;
+        return current != null ? current.getOffHeapBytes() : 0;
+    }
+
+    /**
+     * Stop archiving and counting the archived contents; messages already archived stay readable
+     */
+    public void releaseArchive() {
+        synchronized (archiveLock) {
+            archiveReleased = true;
+            if (archive != null) {
+                archive.release();
+            }
+        }
+    }
+
+    private Message get(int index) {
+        return chunks.get(chunkOf(index))[offsetOf(index)];
+    }
+
+    private Message[] chunk(int chunkIndex) {
+        Message[] chunk = chunks.get(chunkIndex);
+        if (chunk == null) {
+            chunks.compareAndSet(chunkIndex, null, new Message[1 << (chunkIndex + FIRST_CHUNK_BITS)]);
+            chunk = chunks.get(chunkIndex);
+        }
+        return chunk;
+    }
+
+    // Chunk k covers positions [16 * (2^k - 1), 16 * (2^(k+1) - 1))
+    private static int chunkOf(int index) {
+        return (Integer.SIZE - 1 - Integer.numberOfLeadingZeros(index + (1 << FIRST_CHUNK_BITS))) - FIRST_CHUNK_BITS;
+    }
+
+    private static int offsetOf(int index) {
+        int position = index + (1 << FIRST_CHUNK_BITS);
+        return position - Integer.highestOneBit(position);
+    }
+
+    private final class Snapshot extends AbstractList<Message> implements RandomAccess {
+        private final int size;
+
+        Snapshot(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public Message get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+            }
+            return MessageLog.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
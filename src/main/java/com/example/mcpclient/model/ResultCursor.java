@@ -0,0 +1,19 @@
+package com.example.mcpclient.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Position in a paged tool result, so "show more" can serve the next page without calling the tool again
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResultCursor {
+    private ToolResult result;  // full, uncompacted result
+    private String question;    // question the result was projected for
+    private String arrayPointer; // JSON pointer of the paged array ("" for a top-level array)
+    private int offset;         // first item not shown yet
+    private int total;
+}
@@ -0,0 +1,47 @@
+package com.example.mcpclient.model;
+
+import lombok.Getter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable snapshot of the tools exposed by the MCP server.
+ * The version only changes when the tool list itself changes, so callers can
+ * use it to detect when anything derived from the catalog must be rebuilt.
+ */
+@Getter
+public class ToolCatalog {
+
+    private final long version;
+    private final List<McpTool> tools;
+    private final Instant fetchedAt;
+    private final boolean invalidated;
+
+    public ToolCatalog(long version, List<McpTool> tools, Instant fetchedAt) {
+        this(version, tools, fetchedAt, false);
+    }
+
+    private ToolCatalog(long version, List<McpTool> tools, Instant fetchedAt, boolean invalidated) {
+        this.version = version;
+        this.tools = Collections.unmodifiableList(tools);
+        this.fetchedAt = fetchedAt;
+        this.invalidated = invalidated;
+    }
+
+    /**
+     * Whether this snapshot is older than the given TTL
+     */
+    public boolean isExpired(Duration ttl) {
+        return invalidated || fetchedAt.plus(ttl).isBefore(Instant.now());
+    }
+
+    /**
+     * Copy of this snapshot marked as invalid, kept around so it can still be served if a refresh fails
+     */
+    public ToolCatalog invalidate() {
+        return new ToolCatalog(version, tools, fetchedAt, true);
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.mcpclient.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ToolResult {
+    private ToolCall call;
+    private String content;
+}
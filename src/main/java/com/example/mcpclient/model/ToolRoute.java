@@ -0,0 +1,15 @@
+package com.example.mcpclient.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ToolRoute {
+    private List<ToolCall> calls;
+    private double confidence; // 0..1
+}
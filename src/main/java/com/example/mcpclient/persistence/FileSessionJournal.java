@@ -0,0 +1,570 @@
+package com.example.mcpclient.persistence;
+
+import com.example.mcpclient.model.ChatSession;
+import com.example.mcpclient.model.Message;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Session journal in local files.
+ * Events are appended as JSON lines to numbered segment files by a single writer thread; callers only
+ * enqueue. The writer drains whatever has queued up and writes it with one fsync, so concurrent turns
+ * share the cost of a commit. Segments roll over at a size limit. A failed write is retried with backoff,
+ * in a new segment, together with everything queued behind it; nothing is dropped unless the queue is full.
+ * <p>
+ * A snapshot is written by closing the current segment and dumping all sessions to
+ * {@code snapshot-N.snap} (through a temp file and an atomic rename), where N is the first segment it
+ * does not cover; older segments and snapshots are then deleted. Recovery loads the latest snapshot and
+ * replays only the segments after it, both read through memory-mapped files, so restart time depends on
+ * the snapshot size and the activity since it, not on the whole history. Events written between taking
+ * the sessions' state and closing the segment are replayed on top of the snapshot, which is harmless
+ * because replay skips what is already there.
+ * <p>
+ * An evicted session is written to its own {@code session-<hash>.json} file before the EVICTED event, so
+ * it outlives the segments and snapshots that drop it. Restoring it reads that file back; a RESTORED event
+ * makes recovery do the same. The file is removed when the session is deleted.
+ */
+@Slf4j
+public class FileSessionJournal implements SessionJournal, AutoCloseable {
+
+    private static final Pattern SEGMENT = Pattern.compile("segment-(\\d{20})\\.log");
+    private static final Pattern SNAPSHOT = Pattern.compile("snapshot-(\\d{20})\\.snap");
+    private static final String EVICTED_PREFIX = "session-";
+    private static final String EVICTED_SUFFIX = ".json";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final long POLL_INTERVAL_MS = 200;
+    private static final long CLOSE_TIMEOUT_MS = 10_000;
+    private static final long RETRY_MIN_MS = 100;
+    private static final long RETRY_MAX_MS = 10_000;
+    private static final int SNAPSHOT_BUFFER_BYTES = 64 * 1024;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final int maxBatch;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter writer;
+    private final BlockingQueue<Object> queue;
+    private final Thread writerThread;
+    private volatile boolean running = true;
+    // Evicted sessions not yet written to their file; restored from here meanwhile
+    private final Map<String, SessionRecord> pendingEvictions = new ConcurrentHashMap<>();
+    // Deleted sessions whose file may still exist; never restored
+    private final Set<String> pendingDeletes = ConcurrentHashMap.newKeySet();
+
+    // Writer thread state
+    private FileChannel segment;
+    private long segmentSize;
+    private long nextSegment;
+    private long eventsSinceSnapshot;
+
+    private final Counter dropped;
+    private final Counter writeFailures;
+    private final DistributionSummary batchSize;
+    private final Timer fsync;
+    private final Timer snapshotTime;
+    private final Timer recoveryTime;
+
+    public FileSessionJournal(Path directory, long segmentBytes, int maxBatch, int queueCapacity,
+                              ObjectMapper objectMapper, MeterRegistry meterRegistry) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.segmentBytes = segmentBytes;
+        this.maxBatch = maxBatch;
+        this.objectMapper = objectMapper;
+        this.writer = objectMapper.writer();
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+
+        this.dropped = Counter.builder("chat.journal.dropped").register(meterRegistry);
+        this.writeFailures = Counter.builder("chat.journal.write.failures").register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("chat.journal.batch.size").register(meterRegistry);
+        this.fsync = Timer.builder("chat.journal.fsync").register(meterRegistry);
+        this.snapshotTime = Timer.builder("chat.journal.snapshot").register(meterRegistry);
+        this.recoveryTime = Timer.builder("chat.journal.recovery").register(meterRegistry);
+        Gauge.builder("chat.journal.queue.depth", queue, Collection::size).register(meterRegistry);
+
+        deleteTempFiles();
+        // Never append to a segment left by a previous run: its tail may be torn
+        this.nextSegment = Math.max(latest(SEGMENT).orElse(-1L), latest(SNAPSHOT).orElse(-1L)) + 1;
+
+        this.writerThread = new Thread(this::run, "session-journal-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+        log.info("Session journal in {}, next segment {}", directory, nextSegment);
+    }
+
+    @Override
+    public List<ChatSession> recover() {
+        long start = System.nanoTime();
+        Map<String, ChatSession> sessions = new LinkedHashMap<>();
+
+        try {
+            OptionalLong snapshot = latest(SNAPSHOT);
+            if (snapshot.isPresent()) {
+                read(directory.resolve(snapshotName(snapshot.getAsLong())), SessionRecord.class, record -> {
+                    ChatSession session = record.toSession();
+                    sessions.put(session.getId(), session);
+                });
+            }
+
+            long from = snapshot.orElse(0L);
+            for (long number : numbers(SEGMENT)) {
+                if (number >= from) {
+                    read(directory.resolve(segmentName(number)), JournalEvent.class,
+                            event -> apply(sessions, event));
+                }
+            }
+        } catch (IOException e) {
+            log.error("Session journal recovery failed, starting with the sessions recovered so far", e);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        recoveryTime.record(elapsed, TimeUnit.NANOSECONDS);
+        log.info("Recovered {} sessions from the journal in {} ms", sessions.size(), TimeUnit.NANOSECONDS.toMillis(elapsed));
+        return new ArrayList<>(sessions.values());
+    }
+
+    @Override
+    public void append(JournalEvent event) {
+        if (!running) {
+            return;
+        }
+        if (event.getType() == JournalEvent.Type.DELETED) {
+            pendingEvictions.remove(event.getSessionId());
+            pendingDeletes.add(event.getSessionId());
+        }
+        if (!queue.offer(event)) {
+            dropped.increment();
+            log.warn("Session journal queue full, dropped {} event for session {}", event.getType(), event.getSessionId());
+        }
+    }
+
+    @Override
+    public void evict(ChatSession session) {
+        // Copied now, so the pending record holds plain content rather than the evicted session's archive pages
+        SessionRecord record = SessionRecord.detached(session);
+        pendingEvictions.put(session.getId(), record);
+        if (!running || !queue.offer(new Eviction(record))) {
+            // Kept in pendingEvictions, so it can still be restored until shutdown
+            dropped.increment();
+            log.warn("Session journal not accepting writes, evicted session {} is kept in memory only", session.getId());
+        }
+    }
+
+    @Override
+    public Optional<ChatSession> restore(String sessionId) {
+        SessionRecord pending = pendingEvictions.get(sessionId);
+        if (pending != null) {
+            return Optional.of(pending.toSession());
+        }
+        if (pendingDeletes.contains(sessionId)) {
+            return Optional.empty();
+        }
+        try {
+            return readEvicted(sessionId);
+        } catch (IOException e) {
+            log.warn("Could not restore session {} from the journal", sessionId, e);
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public void snapshot(Collection<ChatSession> sessions) {
+        if (running && !queue.offer(new SnapshotRequest(sessions))) {
+            log.warn("Session journal queue full, skipping snapshot");
+        }
+    }
+
+    /**
+     * Write everything still queued, then stop the writer
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writerThread.join(CLOSE_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            log.warn("Session journal closed while writes are still failing, {} events queued", queue.size());
+        }
+    }
+
+    private void run() {
+        List<Object> batch = new ArrayList<>(maxBatch);
+        long backoff = RETRY_MIN_MS;
+        while (running || !queue.isEmpty() || !batch.isEmpty()) {
+            try {
+                if (batch.isEmpty()) {
+                    Object first = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                }
+                queue.drainTo(batch, Math.max(0, maxBatch - batch.size()));
+                write(batch);
+                backoff = RETRY_MIN_MS;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                writeFailures.increment();
+                // The failed write may have left a torn record: continue in a fresh segment, so recovery
+                // (which stops reading a segment at a damaged record) does not skip the retried events
+                closeSegment();
+                log.error("Session journal write failed, retrying {} unwritten items in {} ms", batch.size(), backoff, e);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                backoff = Math.min(2 * backoff, RETRY_MAX_MS);
+            }
+        }
+        closeSegment();
+    }
+
+    /**
+     * Write a batch of events with one fsync; a snapshot request first commits the events before it.
+     * Items that are durable are removed from the batch; on failure the rest stays in it for the retry.
+     */
+    private void write(List<Object> batch) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int events = 0;
+        int written = 0;
+
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                Object item = batch.get(i);
+                if (item instanceof SnapshotRequest) {
+                    commit(out, events);
+                    out.reset();
+                    events = 0;
+                    written = i;
+                    writeSnapshot(((SnapshotRequest) item).sessions);
+                    written = i + 1;
+                } else if (item instanceof Eviction) {
+                    // The session's file must be durable before the event that drops it from recovery
+                    commit(out, events);
+                    out.reset();
+                    events = 0;
+                    written = i;
+                    SessionRecord record = ((Eviction) item).record;
+                    writeEvicted(record);
+                    pendingEvictions.remove(record.getId(), record);
+                    out.write(writer.writeValueAsBytes(JournalEvent.evicted(record.getId())));
+                    out.write('\n');
+                    events++;
+                } else {
+                    JournalEvent event = (JournalEvent) item;
+                    if (event.getType() == JournalEvent.Type.DELETED) {
+                        Files.deleteIfExists(evictedPath(event.getSessionId()));
+                        pendingDeletes.remove(event.getSessionId());
+                    }
+                    out.write(writer.writeValueAsBytes(item));
+                    out.write('\n');
+                    events++;
+                }
+            }
+            commit(out, events);
+            written = batch.size();
+        } finally {
+            batch.subList(0, written).clear();
+        }
+    }
+
+    private void commit(ByteArrayOutputStream out, int events) throws IOException {
+        if (events == 0) {
+            return;
+        }
+
+        if (segment != null && segmentSize >= segmentBytes) {
+            closeSegment();
+        }
+        if (segment == null) {
+            openSegment();
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+        while (buffer.hasRemaining()) {
+            segmentSize += segment.write(buffer);
+        }
+
+        long start = System.nanoTime();
+        segment.force(false);
+        fsync.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        batchSize.record(events);
+        eventsSinceSnapshot += events;
+    }
+
+    private void writeSnapshot(Collection<ChatSession> sessions) throws IOException {
+        if (eventsSinceSnapshot == 0 && latest(SNAPSHOT).isPresent()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        // Everything written so far is in segments before this number
+        closeSegment();
+        long covered = nextSegment;
+
+        Path snapshot = directory.resolve(snapshotName(covered));
+        Path temp = directory.resolve(snapshotName(covered) + TEMP_SUFFIX);
+        int count = 0;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), SNAPSHOT_BUFFER_BYTES)) {
+            for (ChatSession session : sessions) {
+                out.write(writer.writeValueAsBytes(SessionRecord.of(session)));
+                out.write('\n');
+                count++;
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        eventsSinceSnapshot = 0;
+
+        for (long number : numbers(SEGMENT)) {
+            if (number < covered) {
+                Files.deleteIfExists(directory.resolve(segmentName(number)));
+            }
+        }
+        for (long number : numbers(SNAPSHOT)) {
+            if (number < covered) {
+                Files.deleteIfExists(directory.resolve(snapshotName(number)));
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        snapshotTime.record(elapsed, TimeUnit.NANOSECONDS);
+        log.info("Wrote session snapshot {} with {} sessions in {} ms", covered, count, TimeUnit.NANOSECONDS.toMillis(elapsed));
+    }
+
+    private void writeEvicted(SessionRecord record) throws IOException {
+        Path target = evictedPath(record.getId());
+        Path temp = target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(writer.writeValueAsBytes(record));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Optional<ChatSession> readEvicted(String sessionId) throws IOException {
+        Path path = evictedPath(sessionId);
+        if (!Files.exists(path)) {
+            return Optional.empty();
+        }
+        SessionRecord record = objectMapper.readValue(path.toFile(), SessionRecord.class);
+        return Optional.of(record.toSession());
+    }
+
+    /**
+     * File of an evicted session; named by a hash because session ids come from clients
+     */
+    private Path evictedPath(String sessionId) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(sessionId.getBytes(StandardCharsets.UTF_8));
+            return directory.resolve(EVICTED_PREFIX + HexFormat.of().formatHex(hash) + EVICTED_SUFFIX);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private void openSegment() throws IOException {
+        Path path = directory.resolve(segmentName(nextSegment++));
+        segment = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segmentSize = segment.size();
+        log.debug("Opened journal segment {}", path);
+    }
+
+    private void closeSegment() {
+        if (segment == null) {
+            return;
+        }
+        try {
+            segment.close();
+        } catch (IOException e) {
+            log.warn("Failed to close journal segment", e);
+        }
+        segment = null;
+    }
+
+    /**
+     * Apply one replayed event; events already reflected in the snapshot change nothing
+     */
+    private void apply(Map<String, ChatSession> sessions, JournalEvent event) {
+        String id = event.getSessionId();
+        ChatSession session = sessions.get(id);
+
+        switch (event.getType()) {
+            case CREATED -> {
+                if (session == null) {
+                    session = new ChatSession(event.getName());
+                    session.setId(id);
+                    if (event.getTimestamp() != null) {
+                        session.setCreatedAt(event.getTimestamp());
+                    }
+                    sessions.put(id, session);
+                }
+            }
+            case MESSAGE -> {
+                Message message = event.getMessage();
+                if (session != null && message != null && session.findMessage(message.getId()).isEmpty()) {
+                    session.addMessage(message);
+                }
+            }
+            case RENAMED -> {
+                if (session != null) {
+                    session.setName(event.getName());
+                }
+            }
+            case FEEDBACK -> {
+                if (session != null) {
+                    session.findMessage(event.getMessageId()).ifPresent(message -> message.setLiked(event.getLiked()));
+                }
+            }
+            case CLEARED -> {
+                if (session != null) {
+                    session.clearMessages();
+                }
+            }
+            case DELETED, EVICTED -> {
+                // An evicted session stays in its own file; it only leaves the set of live sessions
+                sessions.remove(id);
+                session = null;
+            }
+            case RESTORED -> {
+                if (session == null) {
+                    try {
+                        session = readEvicted(id).orElse(null);
+                    } catch (IOException e) {
+                        log.warn("Could not read evicted session {} during recovery", id, e);
+                    }
+                    if (session != null) {
+                        sessions.put(id, session);
+                    }
+                }
+            }
+        }
+
+        if (session != null && event.getTimestamp() != null) {
+            session.setLastActivity(event.getTimestamp());
+        }
+    }
+
+    /**
+     * Read a file of JSON values through a memory mapping; a torn record at the end is skipped
+     */
+    private <T> void read(Path path, Class<T> type, Consumer<T> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return;
+            }
+
+            InputStream in = size <= Integer.MAX_VALUE
+                    ? new ByteBufferBackedInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, size))
+                    : Channels.newInputStream(channel);
+            try (MappingIterator<T> values = objectMapper.readerFor(type).readValues(in)) {
+                while (values.hasNextValue()) {
+                    consumer.accept(values.nextValue());
+                }
+            } catch (JsonProcessingException e) {
+                log.warn("Stopped reading {} at a damaged record: {}", path.getFileName(), e.getOriginalMessage());
+            }
+        }
+    }
+
+    private OptionalLong latest(Pattern pattern) throws IOException {
+        List<Long> numbers = numbers(pattern);
+        return numbers.isEmpty() ? OptionalLong.empty() : OptionalLong.of(numbers.get(numbers.size() - 1));
+    }
+
+    private List<Long> numbers(Pattern pattern) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                Matcher matcher = pattern.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    numbers.add(Long.parseLong(matcher.group(1)));
+                }
+            });
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    private void deleteTempFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (file.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private static String segmentName(long number) {
+        return String.format("segment-%020d.log", number);
+    }
+
+    private static String snapshotName(long number) {
+        return String.format("snapshot-%020d.snap", number);
+    }
+
+    private static class Eviction {
+        final SessionRecord record;
+
+        Eviction(SessionRecord record) {
+            this.record = record;
+        }
+    }
+
+    private static class SnapshotRequest {
+        final Collection<ChatSession> sessions;
+
+        SnapshotRequest(Collection<ChatSession> sessions) {
+            this.sessions = sessions;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.mcpclient.persistence;
+
+import com.example.mcpclient.model.ChatSession;
+import com.example.mcpclient.model.Message;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * One change to a session, as written to the journal.
+ * Replaying an event that is already reflected in a snapshot leaves the session unchanged.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class JournalEvent {
+
+    public enum Type {
+        CREATED, MESSAGE, RENAMED, FEEDBACK, CLEARED, DELETED, EVICTED, RESTORED
+    }
+
+    private Type type;
+    private String sessionId;
+    private LocalDateTime timestamp;
+    private String name;        // CREATED, RENAMED
+    private Message message;    // MESSAGE
+    private String messageId;   // FEEDBACK
+    private Boolean liked;      // FEEDBACK
+
+    public static JournalEvent created(ChatSession session) {
+        return new JournalEvent(Type.CREATED, session.getId(), session.getCreatedAt(), session.getName(), null, null, null);
+    }
+
+    public static JournalEvent message(String sessionId, Message message) {
+        return new JournalEvent(Type.MESSAGE, sessionId, LocalDateTime.now(), null, message, null, null);
+    }
+
+    public static JournalEvent renamed(String sessionId, String name) {
+        return new JournalEvent(Type.RENAMED, sessionId, LocalDateTime.now(), name, null, null, null);
+    }
+
+    public static JournalEvent feedback(String sessionId, String messageId, Boolean liked) {
+        return new JournalEvent(Type.FEEDBACK, sessionId, LocalDateTime.now(), null, null, messageId, liked);
+    }
+
+    public static JournalEvent cleared(String sessionId) {
+        return new JournalEvent(Type.CLEARED, sessionId, LocalDateTime.now(), null, null, null, null);
+    }
+
+    public static JournalEvent deleted(String sessionId) {
+        return new JournalEvent(Type.DELETED, sessionId, LocalDateTime.now(), null, null, null, null);
+    }
+
+    public static JournalEvent evicted(String sessionId) {
+        return new JournalEvent(Type.EVICTED, sessionId, LocalDateTime.now(), null, null, null, null);
+    }
+
+    public static JournalEvent restored(String sessionId) {
+        return new JournalEvent(Type.RESTORED, sessionId, LocalDateTime.now(), null, null, null, null);
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.mcpclient.persistence;
+
+import com.example.mcpclient.model.ChatSession;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Keeps nothing: sessions live in memory only and are lost on restart
+ */
+public class NoopSessionJournal implements SessionJournal {
+
+    @Override
+    public List<ChatSession> recover() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void append(JournalEvent event) {
+    }
+
+    @Override
+    public void evict(ChatSession session) {
+    }
+
+    @Override
+    public Optional<ChatSession> restore(String sessionId) {
+        return Optional.empty();
+    }
+
+    @Override
+    public void snapshot(Collection<ChatSession> sessions) {
+    }
+}
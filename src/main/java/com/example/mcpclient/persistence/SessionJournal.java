@@ -0,0 +1,44 @@
+package com.example.mcpclient.persistence;
+
+import com.example.mcpclient.model.ChatSession;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Persistence behind the session store.
+ * The store records every change as an event and writes a snapshot of all sessions now and then;
+ * on startup it loads whatever the journal recovered. Sessions the store evicts to stay within its bounds
+ * are kept by the journal and restored on their next use. Implementations must never make the caller
+ * wait for I/O when appending or evicting.
+ */
+public interface SessionJournal {
+
+    /**
+     * Sessions as they were when the application stopped; called once, before anything is appended
+     */
+    List<ChatSession> recover();
+
+    /**
+     * Record a change; returns without waiting for it to be written
+     */
+    void append(JournalEvent event);
+
+    /**
+     * The session leaves memory but stays stored; a later {@link #restore} brings it back.
+     * The session's archived contents are released right after this returns.
+     */
+    void evict(ChatSession session);
+
+    /**
+     * An evicted session as it was when it left memory, or empty if the journal holds none with this id.
+     * The caller records the restore with a {@link JournalEvent.Type#RESTORED} event.
+     */
+    Optional<ChatSession> restore(String sessionId);
+
+    /**
+     * Write a compacted snapshot of the sessions, after which older journal entries are no longer needed
+     */
+    void snapshot(Collection<ChatSession> sessions);
+}
@@ -0,0 +1,54 @@
+package com.example.mcpclient.persistence;
+
+import com.example.mcpclient.model.ChatSession;
+import com.example.mcpclient.model.Message;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * A session as written to a snapshot: the persistent fields only
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SessionRecord {
+
+    private String id;
+    private String name;
+    private LocalDateTime createdAt;
+    private LocalDateTime lastActivity;
+    private List<Message> messages;
+
+    public static SessionRecord of(ChatSession session) {
+        return new SessionRecord(session.getId(), session.getName(), session.getCreatedAt(),
+                session.getLastActivity(), session.getMessages());
+    }
+
+    /**
+     * A record that stays readable after the session releases its archived contents: messages are copied
+     * with their content inflated
+     */
+    public static SessionRecord detached(ChatSession session) {
+        List<Message> messages = session.getMessages().stream()
+                .map(message -> new Message(message.getId(), message.getRole(), message.getContent(),
+                        message.getTimestamp(), message.getLiked()))
+                .toList();
+        return new SessionRecord(session.getId(), session.getName(), session.getCreatedAt(),
+                session.getLastActivity(), messages);
+    }
+
+    public ChatSession toSession() {
+        ChatSession session = new ChatSession(name);
+        session.setId(id);
+        session.setCreatedAt(createdAt);
+        if (messages != null) {
+            messages.forEach(session::addMessage);
+        }
+        session.setLastActivity(lastActivity);
+        return session;
+    }
+}
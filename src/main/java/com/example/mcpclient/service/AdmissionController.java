@@ -0,0 +1,273 @@
+package com.example.mcpclient.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Limits concurrent generations per LLM backend.
+ * Requests beyond the limit wait in a bounded queue with one lane per principal (the token, or the
+ * session when there is no token); freed slots are handed to the lanes round-robin, so one busy user cannot
+ * starve the others. Requests are rejected straight away when the queue is full, or after the queue timeout.
+ */
+@Slf4j
+@Component
+public class AdmissionController {
+
+    private final boolean enabled;
+    private final int defaultMaxConcurrency;
+    private final Map<String, Integer> maxConcurrency;
+    private final int queueSize;
+    private final Duration queueTimeout;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Backend> backends = new ConcurrentHashMap<>();
+
+    public AdmissionController(
+            @Value("${chat.admission.enabled:true}") boolean enabled,
+            @Value("${chat.admission.max-concurrency:4}") int defaultMaxConcurrency,
+            @Value("${chat.admission.queue-size:32}") int queueSize,
+            @Value("${chat.admission.queue-timeout:30000}") long queueTimeout,
+            Environment environment,
+            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.defaultMaxConcurrency = defaultMaxConcurrency;
+        this.maxConcurrency = Binder.get(environment)
+                .bind("chat.admission.backends", Bindable.mapOf(String.class, Integer.class))
+                .orElse(Collections.emptyMap());
+        this.queueSize = queueSize;
+        this.queueTimeout = Duration.ofMillis(queueTimeout);
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Fairness key for a request: the token if there is one, otherwise the session.
+     * Claims inside the token are not verified here, so they must not pick the lane: a forged "sub" would
+     * put its requests in another user's lane and starve them.
+     */
+    public static String subjectFor(String token, String sessionId) {
+        return ToolResultCache.scopeFor(sessionId, token);
+    }
+
+    /**
+     * Whether a new request for the backend would be rejected right now (all slots busy and the queue full)
+     */
+    public boolean isSaturated(String backend) {
+        return enabled && backend(backend).isSaturated();
+    }
+
+    /**
+     * Seconds a rejected client should wait before retrying
+     */
+    public long retryAfterSeconds() {
+        return Math.max(1, queueTimeout.getSeconds() / 2);
+    }
+
+    /**
+     * Run the work once the backend has a free slot, releasing the slot when the work terminates or is
+     * cancelled. Fails with {@link AdmissionRejectedException} when the queue is full or the wait times out.
+     */
+    public <T> Flux<T> admit(String backend, String subject, Supplier<Flux<T>> work) {
+        if (!enabled) {
+            return Flux.defer(work);
+        }
+
+        return Flux.defer(() -> {
+            Backend lane = backend(backend);
+            Waiter waiter = lane.enqueue(subject);
+            if (waiter == null) {
+                lane.rejectedFull.increment();
+                log.info("Rejecting {} request for {}: queue full", backend, subject);
+                return Flux.error(new AdmissionRejectedException("The assistant is busy, please try again shortly"));
+            }
+
+            long start = System.nanoTime();
+            return waiter.permit.asMono()
+                    .timeout(queueTimeout)
+                    .onErrorMap(TimeoutException.class, e -> {
+                        lane.rejectedTimeout.increment();
+                        log.info("Rejecting {} request for {}: waited {} ms", backend, subject, queueTimeout.toMillis());
+                        return new AdmissionRejectedException("The assistant is busy, please try again shortly");
+                    })
+                    .doOnError(error -> lane.abandon(waiter))
+                    .doOnCancel(() -> lane.abandon(waiter))
+                    .flatMapMany(granted -> {
+                        // From here the slot belongs to the work; the abandon hooks above no longer apply
+                        lane.start(waiter);
+                        lane.waitTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        return Flux.defer(work).doFinally(signal -> lane.release(waiter));
+                    });
+        });
+    }
+
+    private Backend backend(String name) {
+        return backends.computeIfAbsent(name, key -> new Backend(key, maxConcurrency.getOrDefault(key, defaultMaxConcurrency)));
+    }
+
+    /**
+     * Slots and fair wait queue of one backend; all state changes happen under the instance lock
+     */
+    private class Backend {
+        final int maxConcurrency;
+        final LinkedHashMap<String, ArrayDeque<Waiter>> lanes = new LinkedHashMap<>();
+        volatile int active;
+        volatile int queued;
+
+        final Timer waitTime;
+        final Counter rejectedFull;
+        final Counter rejectedTimeout;
+
+        Backend(String name, int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+            this.waitTime = Timer.builder("chat.admission.wait").tag("backend", name).register(meterRegistry);
+            this.rejectedFull = Counter.builder("chat.admission.rejected")
+                    .tag("backend", name).tag("reason", "queue-full").register(meterRegistry);
+            this.rejectedTimeout = Counter.builder("chat.admission.rejected")
+                    .tag("backend", name).tag("reason", "timeout").register(meterRegistry);
+            Gauge.builder("chat.admission.queue.depth", this, backend -> backend.queued)
+                    .tag("backend", name).register(meterRegistry);
+            Gauge.builder("chat.admission.active", this, backend -> backend.active)
+                    .tag("backend", name).register(meterRegistry);
+        }
+
+        synchronized boolean isSaturated() {
+            return active >= maxConcurrency && queued >= queueSize;
+        }
+
+        /**
+         * A waiter that already holds a slot, one queued in the subject's lane, or null if the queue is full
+         */
+        synchronized Waiter enqueue(String subject) {
+            Waiter waiter = new Waiter(subject);
+            if (active < maxConcurrency && queued == 0) {
+                active++;
+                waiter.granted = true;
+                waiter.permit.tryEmitValue(Boolean.TRUE);
+                return waiter;
+            }
+            if (queued >= queueSize) {
+                return null;
+            }
+            lanes.computeIfAbsent(subject, key -> new ArrayDeque<>()).add(waiter);
+            queued++;
+            return waiter;
+        }
+
+        synchronized void start(Waiter waiter) {
+            waiter.started = true;
+        }
+
+        /**
+         * The waiter's work terminated or was cancelled: pass its slot on, once
+         */
+        void release(Waiter waiter) {
+            Waiter next;
+            synchronized (this) {
+                next = releaseSlot(waiter);
+            }
+            signal(next);
+        }
+
+        /**
+         * The waiter gave up (timeout or cancel) before its work started: leave the queue, or pass on a slot it
+         * was granted but never used. Once the work has started only release frees the slot.
+         */
+        void abandon(Waiter waiter) {
+            Waiter next = null;
+            synchronized (this) {
+                if (waiter.abandoned || waiter.started) {
+                    return;
+                }
+                waiter.abandoned = true;
+                if (waiter.granted) {
+                    next = releaseSlot(waiter);
+                } else {
+                    ArrayDeque<Waiter> lane = lanes.get(waiter.subject);
+                    if (lane != null && lane.remove(waiter)) {
+                        queued--;
+                        if (lane.isEmpty()) {
+                            lanes.remove(waiter.subject);
+                        }
+                    }
+                }
+            }
+            signal(next);
+        }
+
+        private Waiter releaseSlot(Waiter waiter) {
+            if (waiter.released) {
+                return null;
+            }
+            waiter.released = true;
+            return handOff();
+        }
+
+        /**
+         * Give a freed slot to the next lane in round-robin order, or free it if nobody is waiting
+         */
+        private Waiter handOff() {
+            Iterator<Map.Entry<String, ArrayDeque<Waiter>>> it = lanes.entrySet().iterator();
+            if (!it.hasNext()) {
+                active--;
+                return null;
+            }
+
+            Map.Entry<String, ArrayDeque<Waiter>> first = it.next();
+            ArrayDeque<Waiter> lane = first.getValue();
+            Waiter next = lane.poll();
+            it.remove();
+            if (!lane.isEmpty()) {
+                lanes.put(first.getKey(), lane); // re-inserted at the end of the rotation
+            }
+
+            queued--;
+            next.granted = true;
+            return next;
+        }
+
+        // Outside the lock: the waiter's subscriber starts its work synchronously on this signal
+        private void signal(Waiter next) {
+            if (next != null) {
+                next.permit.tryEmitValue(Boolean.TRUE);
+            }
+        }
+    }
+
+    private static class Waiter {
+        final String subject;
+        final Sinks.One<Boolean> permit = Sinks.one();
+        // Guarded by the backend's lock
+        boolean granted;
+        boolean started;
+        boolean released;
+        boolean abandoned;
+
+        Waiter(String subject) {
+            this.subject = subject;
+        }
+    }
+
+    /**
+     * The backend is saturated and the request was not admitted
+     */
+    public static class AdmissionRejectedException extends RuntimeException {
+        public AdmissionRejectedException(String message) {
+            super(message);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.mcpclient.service;
 
-import com.example.mcpclient.model.Message;
+import com.example.mcpclient.model.ChatSession;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
@@ -10,10 +11,11 @@ import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Slf4j
 @Service
@@ -25,79 +27,74 @@ public class AzureService {
 
   private final ChatClient.Builder chatClientBuilder;
 
+  private final ConversationHistoryManager historyManager;
+
+  private final MeterRegistry meterRegistry;
+
   /**
    * Send a message to Azure OpenAI and get a response (non-streaming - kept for backward compatibility)
    */
-  public String chat(String userMessage, List<Message> chatHistory, String token) {
+  public Mono<String> chat(ChatSession session, String userMessage, String token) {
     log.debug("Sending message to Azure: {}", userMessage);
 
-    try {
-      List<org.springframework.ai.chat.messages.Message> messages = buildMessages(userMessage, chatHistory, token);
-      Prompt prompt = new Prompt(messages);
-
-      String response = chatClient.prompt(prompt)
-          .stream()
-          .content()
-          .collectList()
-          .map(list -> String.join("", list))
-          .block();
-
-      log.debug("Received response from Azure: {}", response);
-      return response;
-
-    } catch (Exception e) {
-      log.error("Error communicating with azure", e);
-      return "Error: Unable to communicate with azure - " + e.getMessage();
-    }
+    return Mono.fromSupplier(() -> new Prompt(buildMessages(userMessage, session, token)))
+        .flatMap(prompt -> chatClient.prompt(prompt)
+            .stream()
+            .content()
+            .collectList()
+            .map(list -> String.join("", list)))
+        .doOnNext(response -> log.debug("Received response from Azure: {}", response))
+        .onErrorResume(e -> {
+          log.error("Error communicating with azure", e);
+          return Mono.just("Error: Unable to communicate with azure - " + e.getMessage());
+        });
   }
 
   /**
-   * Send a message to Azure OpenAI and stream the response
+   * Send a message to Azure OpenAI and stream the response.
+   * Cancelling the returned Flux (e.g. the client disconnects) cancels the upstream generation.
+   * @param session The chat session holding the conversation history
    * @param userMessage The user's message
-   * @param chatHistory Previous chat history
    * @param token JWT token for authentication
-   * @param chunkConsumer Consumer that receives each chunk of the response
+   * @return The response chunks
    */
-  public void chatStream(String userMessage, List<Message> chatHistory, String token, Consumer<String> chunkConsumer) {
+  public Flux<String> chatStream(ChatSession session, String userMessage, String token) {
     log.debug("Sending streaming message to Azure: {}", userMessage);
 
-    try {
-      List<org.springframework.ai.chat.messages.Message> messages = buildMessages(userMessage, chatHistory, token);
-      Prompt prompt = new Prompt(messages);
-
-      // Create a ChatClient without advisors for streaming
-      ChatClient streamingClient = chatClientBuilder.build();
-
-      // Stream the response
-      Flux<String> contentStream = streamingClient.prompt(prompt)
-          .stream()
-          .content()
-          .filter(content -> content != null && !content.isEmpty());
-
-      // Subscribe to the stream and process each chunk
-      contentStream
-          .doOnNext(chunk -> {
-            log.trace("Received chunk from Azure: {}", chunk);
-            chunkConsumer.accept(chunk);
-          })
-          .doOnError(error -> {
-            log.error("Error during streaming from Azure", error);
-            chunkConsumer.accept("\n\n[Error: " + error.getMessage() + "]");
-          })
-          .doOnComplete(() -> log.debug("Streaming completed from Azure"))
-          .blockLast(); // Wait for the stream to complete
-
-    } catch (Exception e) {
-      log.error("Error communicating with azure", e);
-      chunkConsumer.accept("Error: Unable to communicate with azure - " + e.getMessage());
-    }
+    return Flux.defer(() -> {
+          Prompt prompt = new Prompt(buildMessages(userMessage, session, token));
+
+          // Create a ChatClient without advisors for streaming
+          ChatClient streamingClient = chatClientBuilder.build();
+
+          AtomicLong generatedChunks = new AtomicLong();
+          return streamingClient.prompt(prompt)
+              .stream()
+              .content()
+              .filter(content -> content != null && !content.isEmpty())
+              .doOnNext(chunk -> {
+                generatedChunks.incrementAndGet();
+                log.trace("Received chunk from Azure: {}", chunk);
+              })
+              .doOnCancel(() -> {
+                meterRegistry.counter("chat.generation.cancelled", "backend", "azure").increment();
+                meterRegistry.counter("chat.generation.cancelled.tokens", "backend", "azure")
+                    .increment(generatedChunks.get());
+                log.info("Azure generation cancelled after {} chunks", generatedChunks.get());
+              })
+              .doOnComplete(() -> log.debug("Streaming completed from Azure"));
+        })
+        .onErrorResume(e -> {
+          log.error("Error communicating with azure", e);
+          return Flux.just("Error: Unable to communicate with azure - " + e.getMessage());
+        });
   }
 
   /**
    * Build the message list for Azure OpenAI
    */
   private List<org.springframework.ai.chat.messages.Message> buildMessages(
-      String userMessage, List<Message> chatHistory, String token) {
+      String userMessage, ChatSession session, String token) {
 
     List<org.springframework.ai.chat.messages.Message> messages = new ArrayList<>();
 
@@ -114,18 +111,8 @@ public class AzureService {
                 """));
     messages.add(new SystemMessage("Use this new JWT token when calling the apis. Do not prompt the user for a JWT. " + token));
 
-    // Add chat history (excluding the current user message if it's already in history)
-    if (chatHistory != null && !chatHistory.isEmpty()) {
-      messages.addAll(chatHistory.stream()
-          .map(msg -> {
-            if ("user".equals(msg.getRole())) {
-              return new UserMessage(msg.getContent());
-            } else {
-              return new org.springframework.ai.chat.messages.AssistantMessage(msg.getContent());
-            }
-          })
-          .toList());
-    }
+    // Add chat history within the token budget (excluding the current user message if it's already in history)
+    messages.addAll(historyManager.history(session, userMessage));
 
     // Add current user message
     messages.add(new UserMessage(userMessage));
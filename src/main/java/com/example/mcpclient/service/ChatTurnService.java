@@ -0,0 +1,134 @@
+package com.example.mcpclient.service;
+
+import com.example.mcpclient.model.ChatSession;
+import com.example.mcpclient.model.Message;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Runs one chat turn for any transport.
+ * The HTTP/SSE endpoint and the WebSocket endpoint both go through here, so a turn has the same
+ * semantics on either: session get-or-create, turns of a session run in order, sharing with identical
+ * turns in flight, admission control, chunk coalescing, a resumable background stream and the assistant
+ * message saved on completion.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChatTurnService {
+
+    private static final Duration STREAM_TIMEOUT = Duration.ofMinutes(5);
+    private static final String OLLAMA_BACKEND = "ollama";
+
+    private final SessionService sessionService;
+    private final OllamaService ollamaService;
+    private final AdmissionController admissionController;
+    private final ChunkCoalescer chunkCoalescer;
+    private final RequestCoalescer requestCoalescer;
+    private final SessionTurnScheduler sessionTurnScheduler;
+    private final StreamReplayRegistry streamReplayRegistry;
+
+    /**
+     * Whether a new turn would be rejected right away
+     */
+    public boolean isSaturated() {
+        return admissionController.isSaturated(OLLAMA_BACKEND);
+    }
+
+    public long retryAfterSeconds() {
+        return admissionController.retryAfterSeconds();
+    }
+
+    /**
+     * Start a turn and return the first client's view of its events.
+     * Generation runs in the background, so a dropped client can resume the same answer. Turns of one
+     * session run in order; with replacePending this turn replaces the session's turns still waiting.
+     */
+    public Flux<ServerSentEvent<String>> startTurn(String sessionId, String message, String token,
+                                                   boolean replacePending) {
+        // Get or create session - THIS IS THE KEY FIX
+        Optional<ChatSession> sessionOpt = sessionService.getSession(sessionId);
+        ChatSession session;
+
+        if (sessionOpt.isEmpty()) {
+            log.info("Session {} not found in backend, creating new session with this ID", sessionId);
+            // Create session with the ID from frontend to maintain consistency
+            session = sessionService.createSessionWithId(sessionId, "Chat Session");
+            log.info("Created new session: {}", session.getId());
+        } else {
+            session = sessionOpt.get();
+            log.debug("Using existing session: {}", session.getId());
+        }
+
+        Message userMessage = new Message("user", message);
+
+        // Generate a message ID for the assistant's response
+        String assistantMessageId = UUID.randomUUID().toString();
+
+        // The history is only touched once the session's earlier turns are done
+        Flux<ServerSentEvent<String>> turn = sessionTurnScheduler.schedule(session.getId(), replacePending, () -> {
+            // Add user message to session
+            sessionService.addMessage(session, userMessage);
+
+            StringBuilder fullResponse = new StringBuilder();
+
+            // Stream response from Ollama once admitted, merging tokens into fewer events;
+            // identical turns in flight share one answer
+            Flux<ServerSentEvent<String>> chunks = requestCoalescer.share(session, message, token,
+                            () -> chunkCoalescer.coalesce(admissionController.admit(
+                                    OLLAMA_BACKEND,
+                                    AdmissionController.subjectFor(token, session.getId()),
+                                    () -> ollamaService.chatStream(session, message, token))))
+                    .doOnNext(fullResponse::append)
+                    .map(SseEventEncoder::chunk);
+
+            Mono<ServerSentEvent<String>> done = Mono.fromSupplier(() -> {
+                // Add complete assistant message to session
+                Message assistantMessage = new Message("assistant", fullResponse.toString());
+                assistantMessage.setId(assistantMessageId);
+                sessionService.addMessage(session, assistantMessage);
+
+                log.info("Streaming completed for session: {}", sessionId);
+                return SseEventEncoder.done(assistantMessageId);
+            });
+
+            return Flux.concat(chunks, done);
+        });
+
+        Flux<ServerSentEvent<String>> events = Flux.concat(
+                        Mono.just(SseEventEncoder.userMessage(userMessage.getId())),
+                        Mono.just(SseEventEncoder.start(assistantMessageId)),
+                        turn)
+                .timeout(STREAM_TIMEOUT)
+                .onErrorResume(AdmissionController.AdmissionRejectedException.class, e -> Mono.just(
+                        SseEventEncoder.busy(e.getMessage(), admissionController.retryAfterSeconds())))
+                .onErrorResume(SessionTurnScheduler.SessionBusyException.class, e -> Mono.just(
+                        SseEventEncoder.busy(e.getMessage(), admissionController.retryAfterSeconds())))
+                .onErrorResume(SessionTurnScheduler.TurnReplacedException.class, e -> Mono.just(
+                        SseEventEncoder.error(e.getMessage())))
+                .onErrorResume(e -> {
+                    log.error("Error during streaming", e);
+                    return Mono.just(SseEventEncoder.error(e.getMessage()));
+                });
+
+        return streamReplayRegistry.start(assistantMessageId, events)
+                .doOnCancel(() -> log.info("Client disconnected from stream {} of session: {}",
+                        assistantMessageId, sessionId));
+    }
+
+    /**
+     * The events of a running or recently finished turn after lastEventId; empty if the turn is unknown
+     */
+    public Optional<Flux<ServerSentEvent<String>>> resume(String messageId, long lastEventId) {
+        return streamReplayRegistry.resume(messageId, lastEventId)
+                .map(events -> events.onErrorResume(e -> Mono.just(SseEventEncoder.error(e.getMessage()))));
+    }
+}
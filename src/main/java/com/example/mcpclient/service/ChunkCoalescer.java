@@ -0,0 +1,124 @@
+package com.example.mcpclient.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges model chunks (roughly one token each) into fewer, larger SSE events.
+ * The first chunk is sent straight away so time-to-first-token is unchanged; after that chunks are
+ * buffered until the buffer reaches the size threshold, the oldest buffered chunk is older than the
+ * time threshold, or the stream ends.
+ */
+@Component
+public class ChunkCoalescer {
+
+    private final boolean enabled;
+    private final int maxChars;
+    private final Duration maxDelay;
+    private final Scheduler scheduler = Schedulers.parallel();
+
+    private final Counter chunksIn;
+    private final Counter chunksOut;
+
+    public ChunkCoalescer(
+            @Value("${chat.sse.coalescing.enabled:true}") boolean enabled,
+            @Value("${chat.sse.coalescing.max-chars:512}") int maxChars,
+            @Value("${chat.sse.coalescing.max-delay:40}") long maxDelay,
+            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxChars = maxChars;
+        this.maxDelay = Duration.ofMillis(maxDelay);
+        this.chunksIn = Counter.builder("chat.sse.chunks").tag("stage", "generated").register(meterRegistry);
+        this.chunksOut = Counter.builder("chat.sse.chunks").tag("stage", "sent").register(meterRegistry);
+    }
+
+    public Flux<String> coalesce(Flux<String> chunks) {
+        if (!enabled) {
+            return chunks;
+        }
+
+        return Flux.create(sink -> {
+            Buffer buffer = new Buffer(sink);
+            Disposable upstream = chunks.subscribe(buffer::add, buffer::error, buffer::complete);
+            sink.onDispose(() -> {
+                upstream.dispose();
+                buffer.cancelTimer();
+            });
+        }, FluxSink.OverflowStrategy.BUFFER);
+    }
+
+    /**
+     * Pending text of one stream; upstream signals and the timer both go through the instance lock
+     */
+    private class Buffer {
+        final FluxSink<String> sink;
+        final StringBuilder pending = new StringBuilder();
+        boolean first = true;
+        Disposable timer;
+
+        Buffer(FluxSink<String> sink) {
+            this.sink = sink;
+        }
+
+        synchronized void add(String chunk) {
+            chunksIn.increment();
+            if (first) {
+                first = false;
+                emit(chunk);
+                return;
+            }
+
+            pending.append(chunk);
+            if (pending.length() >= maxChars) {
+                flush();
+            } else if (timer == null) {
+                timer = scheduler.schedule(this::onTimer, maxDelay.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        synchronized void complete() {
+            flush();
+            sink.complete();
+        }
+
+        synchronized void error(Throwable error) {
+            flush();
+            sink.error(error);
+        }
+
+        synchronized void cancelTimer() {
+            if (timer != null) {
+                timer.dispose();
+                timer = null;
+            }
+        }
+
+        private synchronized void onTimer() {
+            timer = null;
+            flush();
+        }
+
+        private void flush() {
+            cancelTimer();
+            if (pending.length() > 0) {
+                emit(pending.toString());
+                pending.setLength(0);
+            }
+        }
+
+        private void emit(String text) {
+            chunksOut.increment();
+            sink.next(text);
+        }
+    }
+}
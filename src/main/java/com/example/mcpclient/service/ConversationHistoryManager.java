@@ -0,0 +1,217 @@
+package com.example.mcpclient.service;
+
+import com.example.mcpclient.model.ChatSession;
+import com.example.mcpclient.model.Message;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the conversation history sent to the model within a token budget.
+ * The most recent messages that fit the budget are sent verbatim; everything older is represented by a
+ * running summary stored on the ChatSession, which is extended in the background as messages fall out of
+ * the window, so prompt size stays flat however long the session gets.
+ * The window start only moves when the budget is exceeded, and then jumps down to a low watermark, so
+ * consecutive turns share a byte-identical prompt prefix that Ollama can reuse from its KV cache.
+ */
+@Slf4j
+@Service
+public class ConversationHistoryManager {
+
+    private static final int CHARS_PER_TOKEN = 4;
+    private static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    private final ChatClient chatClient;
+    private final int tokenBudget;
+    private final int summaryTokens;
+    private final double lowWatermark;
+    private final Set<String> summarizing = ConcurrentHashMap.newKeySet();
+
+    public ConversationHistoryManager(
+            ChatClient chatClient,
+            @Value("${chat.history.token-budget:3000}") int tokenBudget,
+            @Value("${chat.history.summary-tokens:400}") int summaryTokens,
+            @Value("${chat.history.low-watermark:0.6}") double lowWatermark) {
+        this.chatClient = chatClient;
+        this.tokenBudget = tokenBudget;
+        this.summaryTokens = summaryTokens;
+        this.lowWatermark = lowWatermark;
+    }
+
+    /**
+     * History messages for a prompt using the default budget.
+     * The window start is anchored on the session and older messages are folded into the summary.
+     */
+    public List<org.springframework.ai.chat.messages.Message> history(ChatSession session, String currentMessage) {
+        if (session == null) {
+            return new ArrayList<>();
+        }
+
+        long generation = session.getClearGeneration(); // read before the messages, see summarizeAsync
+        List<Message> messages = historyMessages(session, currentMessage);
+        String summary = session.getSummary();
+        int summarizedCount = session.getSummarizedCount();
+        int available = tokenBudget - (summary != null ? estimateTokens(summary) : 0);
+
+        int start = Math.min(session.getHistoryStart(), messages.size());
+        if (estimateTokens(messages, start) > available) {
+            start = windowStart(messages, (int) (available * lowWatermark));
+            session.setHistoryStart(start);
+        }
+
+        if (start > summarizedCount) {
+            summarizeAsync(session, generation, messages, summarizedCount, start);
+        }
+
+        return toPrompt(messages, summary, summarizedCount, start);
+    }
+
+    /**
+     * History messages for a prompt: the running summary (if any) followed by the most recent messages
+     * that fit the budget. The current user message is left out because callers append it themselves.
+     */
+    public List<org.springframework.ai.chat.messages.Message> history(ChatSession session, String currentMessage, int budget) {
+        if (session == null) {
+            return new ArrayList<>();
+        }
+
+        List<Message> messages = historyMessages(session, currentMessage);
+        String summary = session.getSummary();
+        int summarizedCount = session.getSummarizedCount();
+
+        int start = windowStart(messages, budget - (summary != null ? estimateTokens(summary) : 0));
+        return toPrompt(messages, summary, summarizedCount, start);
+    }
+
+    private List<org.springframework.ai.chat.messages.Message> toPrompt(List<Message> messages, String summary,
+                                                                        int summarizedCount, int start) {
+        List<org.springframework.ai.chat.messages.Message> history = new ArrayList<>();
+        if (summary != null && summarizedCount > 0) {
+            history.add(new SystemMessage("Summary of the earlier conversation:\n" + summary));
+        }
+        // Messages already covered by the summary are never repeated verbatim
+        for (Message message : messages.subList(Math.max(start, Math.min(summarizedCount, messages.size())), messages.size())) {
+            history.add(toPromptMessage(message));
+        }
+
+        log.debug("History window: {} of {} messages, summary covers {}", messages.size() - start, messages.size(), summarizedCount);
+        return history;
+    }
+
+    /**
+     * Index of the oldest message such that it and everything after it fit the budget
+     */
+    private int windowStart(List<Message> messages, int budget) {
+        int remaining = budget;
+        int start = messages.size();
+        while (start > 0) {
+            int cost = estimateTokens(messages.get(start - 1));
+            if (cost > remaining) {
+                break;
+            }
+            remaining -= cost;
+            start--;
+        }
+        return start;
+    }
+
+    private int estimateTokens(List<Message> messages, int from) {
+        int tokens = 0;
+        for (int i = from; i < messages.size(); i++) {
+            tokens += estimateTokens(messages.get(i));
+        }
+        return tokens;
+    }
+
+    /**
+     * Local token estimate (about four characters per token plus per-message overhead)
+     */
+    public int estimateTokens(String text) {
+        return text == null ? 0 : (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    public int estimateTokens(Message message) {
+        return MESSAGE_OVERHEAD_TOKENS + estimateTokens(message.getContent());
+    }
+
+    private List<Message> historyMessages(ChatSession session, String currentMessage) {
+        List<Message> messages = session.getMessages();
+        if (!messages.isEmpty()) {
+            Message last = messages.get(messages.size() - 1);
+            if ("user".equals(last.getRole()) && last.getContent() != null && last.getContent().equals(currentMessage)) {
+                return messages.subList(0, messages.size() - 1);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Fold messages [from, to) into the session's running summary in the background, once per session at a time.
+     * generation is the session's clear generation read before the messages were; the summary is dropped if the
+     * session has been cleared since, even when the new messages already reach past to.
+     */
+    private void summarizeAsync(ChatSession session, long generation, List<Message> messages, int from, int to) {
+        if (!summarizing.add(session.getId())) {
+            return;
+        }
+
+        List<Message> pending = Collections.unmodifiableList(new ArrayList<>(messages.subList(from, to)));
+        String previousSummary = session.getSummary();
+
+        Mono.fromCallable(() -> summarize(previousSummary, pending))
+                .subscribeOn(Schedulers.boundedElastic())
+                .doFinally(signal -> summarizing.remove(session.getId()))
+                .subscribe(summary -> {
+                    synchronized (session) {
+                        // Skip if the session was cleared or summarized by someone else meanwhile
+                        if (session.getClearGeneration() == generation && session.getSummarizedCount() == from) {
+                            session.setSummary(summary);
+                            session.setSummarizedCount(to);
+                            log.debug("Session {} summary now covers {} messages", session.getId(), to);
+                        }
+                    }
+                }, error -> log.warn("Could not update summary for session {}: {}", session.getId(), error.getMessage()));
+    }
+
+    private String summarize(String previousSummary, List<Message> messages) {
+        StringBuilder sb = new StringBuilder();
+        if (previousSummary != null) {
+            sb.append("Current summary:\n").append(previousSummary).append("\n\n");
+        }
+        sb.append("New messages:\n");
+        for (Message message : messages) {
+            sb.append(message.getRole()).append(": ").append(message.getContent()).append("\n");
+        }
+
+        List<org.springframework.ai.chat.messages.Message> prompt = List.of(
+                new SystemMessage("""
+                        You maintain a running summary of a clinical chat conversation.
+                        Merge the new messages into the current summary.
+                        Keep patient identifiers, findings, decisions and open questions.
+                        Write at most %d words of plain text.
+                        """.formatted(summaryTokens * 3 / 4)),
+                new UserMessage(sb.toString()));
+
+        return chatClient.prompt(new Prompt(prompt)).call().content();
+    }
+
+    private org.springframework.ai.chat.messages.Message toPromptMessage(Message message) {
+        if ("user".equals(message.getRole())) {
+            return new UserMessage(message.getContent());
+        }
+        return new AssistantMessage(message.getContent());
+    }
+}
@@ -0,0 +1,329 @@
+package com.example.mcpclient.service;
+
+import com.example.mcpclient.model.McpTool;
+import com.example.mcpclient.model.ToolCall;
+import com.example.mcpclient.model.ToolCatalog;
+import com.example.mcpclient.model.ToolRoute;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * TF-IDF keyword router over the tool catalog.
+ * Each tool is indexed by the words in its name, description and input schema properties. A message is
+ * routed to the best-scoring tool when it clearly beats the runner-up and every required argument can be
+ * extracted from the message (ids from numbers, names from capitalized words or "for/named ..." phrases).
+ * Other numeric properties are only filled from a number right next to one of their words ("7 days", "limit 5").
+ */
+@Slf4j
+@Component
+public class KeywordToolRouter implements ToolRouter {
+
+    private static final Pattern WORD = Pattern.compile("[A-Za-z]+|\\d+");
+    private static final Pattern CAMEL_CASE = Pattern.compile("(?<=[a-z])(?=[A-Z])");
+    private static final Pattern TOKEN = Pattern.compile("[A-Za-z]+|\\b\\d+\\b");
+    private static final Pattern CAPITALIZED_NAME =
+            Pattern.compile("\\b([A-Z][a-z'\\-]+(?:\\s+[A-Z][a-z'\\-]+)+)\\b");
+    private static final Pattern INTRODUCED_NAME =
+            Pattern.compile("\\b(?:for|named|called|patient)\\s+([A-Za-z'\\-]+(?:\\s+[A-Za-z'\\-]+)?)\\s*[?.!]?$",
+                    Pattern.CASE_INSENSITIVE);
+
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "an", "the", "and", "or", "of", "for", "to", "in", "on", "by", "with", "from", "at",
+            "me", "my", "i", "you", "please", "can", "could", "would", "show", "get", "give", "find",
+            "fetch", "retrieve", "list", "what", "is", "are", "this", "that", "it", "about", "tell");
+
+    private volatile Index index;
+
+    @Override
+    public Optional<ToolRoute> route(String userMessage, ToolCatalog catalog) {
+        if (userMessage == null || catalog == null || catalog.getTools().isEmpty()) {
+            return Optional.empty();
+        }
+
+        Index current = index;
+        if (current == null || current.version != catalog.getVersion()) {
+            current = new Index(catalog);
+            index = current;
+        }
+
+        Map<String, Double> query = current.vectorize(terms(userMessage));
+        if (query.isEmpty()) {
+            return Optional.empty();
+        }
+
+        int best = -1;
+        double bestScore = 0;
+        double secondScore = 0;
+        for (int i = 0; i < current.tools.size(); i++) {
+            double score = cosine(query, current.vectors.get(i));
+            if (score > bestScore) {
+                secondScore = bestScore;
+                bestScore = score;
+                best = i;
+            } else if (score > secondScore) {
+                secondScore = score;
+            }
+        }
+
+        if (best < 0) {
+            return Optional.empty();
+        }
+
+        McpTool tool = current.tools.get(best);
+        Optional<Map<String, Object>> arguments = extractArguments(userMessage, tool.getInputSchema());
+        if (arguments.isEmpty()) {
+            log.debug("Router matched {} but could not extract its arguments", tool.getName());
+            return Optional.empty();
+        }
+
+        // Geometric mean of how well the best tool matches and how clearly it beats the runner-up
+        double margin = (bestScore - secondScore) / bestScore;
+        double confidence = Math.sqrt(bestScore * margin);
+
+        log.debug("Router picked {} (score {}, runner-up {}, confidence {})", tool.getName(), bestScore, secondScore, confidence);
+        return Optional.of(new ToolRoute(List.of(new ToolCall(tool.getName(), arguments.get())), confidence));
+    }
+
+    /**
+     * Fill the tool's schema properties from the message; empty if a required property cannot be filled
+     */
+    private Optional<Map<String, Object>> extractArguments(String message, Object inputSchema) {
+        Map<String, Object> arguments = new HashMap<>();
+        if (!(inputSchema instanceof Map)) {
+            return Optional.of(arguments);
+        }
+
+        Map<?, ?> schema = (Map<?, ?>) inputSchema;
+        Map<?, ?> properties = schema.get("properties") instanceof Map ? (Map<?, ?>) schema.get("properties") : Map.of();
+        Collection<?> required = schema.get("required") instanceof Collection ? (Collection<?>) schema.get("required") : List.of();
+
+        List<String> tokens = tokens(message);
+        String name = extractName(message);
+
+        // Numbers cued by a property's own words go to that property and are not taken as an id
+        Map<String, Integer> cued = new HashMap<>();
+        for (Map.Entry<?, ?> entry : properties.entrySet()) {
+            String property = String.valueOf(entry.getKey());
+            Map<?, ?> definition = entry.getValue() instanceof Map ? (Map<?, ?>) entry.getValue() : Map.of();
+            if (!isIdProperty(property) && isNumeric(String.valueOf(definition.get("type")))) {
+                int position = cuedNumber(tokens, property);
+                if (position >= 0 && !cued.containsValue(position)) {
+                    cued.put(property, position);
+                }
+            }
+        }
+        List<String> numbers = new ArrayList<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            if (isNumber(tokens.get(i)) && !cued.containsValue(i)) {
+                numbers.add(tokens.get(i));
+            }
+        }
+
+        for (Map.Entry<?, ?> entry : properties.entrySet()) {
+            String property = String.valueOf(entry.getKey());
+            Map<?, ?> definition = entry.getValue() instanceof Map ? (Map<?, ?>) entry.getValue() : Map.of();
+            String type = String.valueOf(definition.get("type"));
+            String lower = property.toLowerCase(Locale.ROOT);
+
+            Object value = null;
+            if (isIdProperty(property)) {
+                if (numbers.size() == 1) {
+                    value = "string".equals(type) ? numbers.get(0) : (Object) Long.parseLong(numbers.get(0));
+                }
+            } else if (cued.containsKey(property)) {
+                value = Long.parseLong(tokens.get(cued.get(property)));
+            } else if (lower.contains("name") && name != null) {
+                String[] parts = name.split("\\s+");
+                if (lower.contains("first")) {
+                    value = parts[0];
+                } else if (lower.contains("last") || lower.contains("surname")) {
+                    value = parts[parts.length - 1];
+                } else {
+                    value = name;
+                }
+            } else if (definition.get("enum") instanceof Collection) {
+                for (Object option : (Collection<?>) definition.get("enum")) {
+                    if (message.toLowerCase(Locale.ROOT).contains(String.valueOf(option).toLowerCase(Locale.ROOT))) {
+                        value = option;
+                        break;
+                    }
+                }
+            }
+
+            if (value != null) {
+                arguments.put(property, value);
+            } else if (required.contains(property)) {
+                return Optional.empty();
+            }
+        }
+
+        return Optional.of(arguments);
+    }
+
+    /**
+     * Properties named as identifiers; only these take the message's single number without a cue
+     */
+    private static boolean isIdProperty(String property) {
+        String lower = property.toLowerCase(Locale.ROOT);
+        return lower.equals("id") || lower.endsWith("_id") || property.endsWith("Id");
+    }
+
+    private static boolean isNumeric(String type) {
+        return "integer".equals(type) || "number".equals(type);
+    }
+
+    private static boolean isNumber(String token) {
+        return Character.isDigit(token.charAt(0));
+    }
+
+    /**
+     * Position of the number cueing the property: right after one of its words ("limit 5"), or failing that
+     * right before one ("7 days"); -1 if there is none
+     */
+    private static int cuedNumber(List<String> tokens, String property) {
+        List<String> words = terms(property);
+        for (int i = 0; i + 1 < tokens.size(); i++) {
+            if (words.contains(tokens.get(i)) && isNumber(tokens.get(i + 1))) {
+                return i + 1;
+            }
+        }
+        for (int i = 1; i < tokens.size(); i++) {
+            if (words.contains(tokens.get(i)) && isNumber(tokens.get(i - 1))) {
+                return i - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The message's words (lower-cased and stemmed like terms, stop words kept) and standalone numbers, in order
+     */
+    private static List<String> tokens(String message) {
+        List<String> tokens = new ArrayList<>();
+        Matcher matcher = TOKEN.matcher(message);
+        while (matcher.find()) {
+            tokens.add(stem(matcher.group().toLowerCase(Locale.ROOT)));
+        }
+        return tokens;
+    }
+
+    private static String extractName(String message) {
+        Matcher capitalized = CAPITALIZED_NAME.matcher(message);
+        while (capitalized.find()) {
+            String candidate = capitalized.group(1);
+            String first = candidate.split("\\s+")[0].toLowerCase(Locale.ROOT);
+            if (!STOP_WORDS.contains(first)) {
+                return candidate;
+            }
+        }
+        Matcher introduced = INTRODUCED_NAME.matcher(message.trim());
+        if (introduced.find() && !introduced.group(1).matches("\\d+")) {
+            return introduced.group(1);
+        }
+        return null;
+    }
+
+    /**
+     * Lower-cased, lightly stemmed words without stop words; identifiers are split on camelCase and underscores
+     */
+    static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        Matcher matcher = WORD.matcher(CAMEL_CASE.matcher(text).replaceAll(" ").replace('_', ' '));
+        while (matcher.find()) {
+            String word = matcher.group().toLowerCase(Locale.ROOT);
+            if (STOP_WORDS.contains(word) || Character.isDigit(word.charAt(0))) {
+                continue;
+            }
+            terms.add(stem(word));
+        }
+        return terms;
+    }
+
+    private static String stem(String word) {
+        if (word.length() > 3 && word.endsWith("s") && !word.endsWith("ss")) {
+            return word.substring(0, word.length() - 1);
+        }
+        return word;
+    }
+
+    private static double cosine(Map<String, Double> a, Map<String, Double> b) {
+        double dot = 0;
+        for (Map.Entry<String, Double> entry : a.entrySet()) {
+            Double other = b.get(entry.getKey());
+            if (other != null) {
+                dot += entry.getValue() * other;
+            }
+        }
+        return dot; // both vectors are unit length
+    }
+
+    /**
+     * TF-IDF vectors for one version of the tool catalog
+     */
+    private static class Index {
+        final long version;
+        final List<McpTool> tools;
+        final List<Map<String, Double>> vectors = new ArrayList<>();
+        final Map<String, Double> idf = new HashMap<>();
+
+        Index(ToolCatalog catalog) {
+            this.version = catalog.getVersion();
+            this.tools = catalog.getTools();
+
+            List<List<String>> documents = new ArrayList<>();
+            Map<String, Integer> documentFrequency = new HashMap<>();
+            for (McpTool tool : tools) {
+                List<String> document = terms(describe(tool));
+                documents.add(document);
+                new HashSet<>(document).forEach(term -> documentFrequency.merge(term, 1, Integer::sum));
+            }
+
+            int n = tools.size();
+            documentFrequency.forEach((term, df) -> idf.put(term, Math.log(1.0 + (double) n / df)));
+            documents.forEach(document -> vectors.add(vectorize(document)));
+        }
+
+        Map<String, Double> vectorize(List<String> terms) {
+            Map<String, Double> vector = new HashMap<>();
+            for (String term : terms) {
+                Double weight = idf.get(term);
+                if (weight != null) {
+                    vector.merge(term, weight, Double::sum);
+                }
+            }
+            double norm = Math.sqrt(vector.values().stream().mapToDouble(v -> v * v).sum());
+            if (norm > 0) {
+                vector.replaceAll((term, value) -> value / norm);
+            }
+            return vector;
+        }
+
+        private static String describe(McpTool tool) {
+            StringBuilder sb = new StringBuilder();
+            // The name is repeated so it outweighs long descriptions
+            sb.append(tool.getName()).append(' ').append(tool.getName()).append(' ');
+            if (tool.getDescription() != null) {
+                sb.append(tool.getDescription()).append(' ');
+            }
+            if (tool.getInputSchema() instanceof Map) {
+                Object properties = ((Map<?, ?>) tool.getInputSchema()).get("properties");
+                if (properties instanceof Map) {
+                    ((Map<?, ?>) properties).forEach((property, definition) -> {
+                        sb.append(property).append(' ');
+                        if (definition instanceof Map && ((Map<?, ?>) definition).get("description") != null) {
+                            sb.append(((Map<?, ?>) definition).get("description")).append(' ');
+                        }
+                    });
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
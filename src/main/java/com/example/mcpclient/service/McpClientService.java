@@ -2,6 +2,9 @@ package com.example.mcpclient.service;
 
 import com.example.mcpclient.model.Message;
 import com.example.mcpclient.model.McpTool;
+import com.example.mcpclient.model.ToolCall;
+import com.example.mcpclient.model.ToolCatalog;
+import com.example.mcpclient.model.ToolResult;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
@@ -11,7 +14,9 @@ import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
 import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 /**
@@ -22,14 +27,29 @@ import java.util.stream.Collectors;
 public class McpClientService {
 
     private final WebClient webClient;
+    private final McpTransport transport;
+    private final ToolResultCache toolResultCache;
     private final long timeout;
     private final String mcpEndpoint;
+    private final Duration toolCacheTtl;
+    private final boolean batchEnabled;
+
+    private final AtomicReference<ToolCatalog> toolCatalog = new AtomicReference<>();
+    private final AtomicReference<Mono<ToolCatalog>> toolCatalogRefresh = new AtomicReference<>();
 
     public McpClientService(
             @Value("${mcp.server.url}") String mcpServerUrl,
-            @Value("${mcp.server.timeout:30000}") long timeout) {
+            @Value("${mcp.server.timeout:30000}") long timeout,
+            @Value("${mcp.tools.cache-ttl:300000}") long toolCacheTtl,
+            @Value("${mcp.tools.batch:false}") boolean batchEnabled,
+            McpTransport transport,
+            ToolResultCache toolResultCache) {
+        this.batchEnabled = batchEnabled;
+        this.toolResultCache = toolResultCache;
+        this.transport = transport;
         this.timeout = timeout;
         this.mcpEndpoint = mcpServerUrl;
+        this.toolCacheTtl = Duration.ofMillis(toolCacheTtl);
 
         // Extract base URL (remove /mcp if present)
         String baseUrl = mcpServerUrl;
@@ -42,31 +62,17 @@ public class McpClientService {
                 .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
                 .build();
 
+        transport.onNotification(this::handleNotification);
+
         log.info("MCP Client initialized with URL: {}", mcpServerUrl);
     }
 
     /**
-     * Initialize the MCP connection
+     * Initialize the MCP connection (the session is opened once and reused)
      */
     public Mono<Boolean> initialize() {
-        log.debug("Initializing MCP connection");
-
-        Map<String, Object> request = new HashMap<>();
-        request.put("jsonrpc", "2.0");
-        request.put("method", "initialize");
-        request.put("id", 1);
-
-        return webClient.post()
-                .uri("/mcp")
-                .bodyValue(request)
-                .retrieve()
-                .bodyToMono(Map.class)
-                .timeout(Duration.ofMillis(timeout))
-                .map(response -> {
-                    log.debug("MCP initialized: {}", response);
-                    return true;
-                })
-                .doOnError(error -> log.error("Error initializing MCP", error))
+        return transport.session()
+                .map(sessionId -> true)
                 .onErrorReturn(false);
     }
 
@@ -74,25 +80,117 @@ public class McpClientService {
      * Check if MCP server is available
      */
     public Mono<Boolean> checkServerHealth() {
-        return initialize();
+        return transport.request("ping", null)
+                .map(response -> response.get("error") == null)
+                .timeout(Duration.ofMillis(timeout))
+                .doOnError(error -> log.warn("MCP health check failed: {}", error.getMessage()))
+                .onErrorReturn(false);
     }
 
     /**
-     * List available tools from MCP server using JSON-RPC 2.0
+     * List available tools, served from the cached tool catalog
      */
     public Mono<List<McpTool>> listTools() {
-        log.debug("Fetching available tools from MCP server");
+        return getToolCatalog().map(ToolCatalog::getTools);
+    }
 
-        Map<String, Object> request = new HashMap<>();
-        request.put("jsonrpc", "2.0");
-        request.put("method", "tools/list");
-        request.put("id", 2);
+    /**
+     * Get the cached tool catalog.
+     * A fresh catalog is returned as-is. An expired one is returned immediately while a single
+     * background refresh runs. After an explicit invalidation callers wait for the refresh, falling
+     * back to the stale catalog if the server cannot be reached.
+     */
+    public Mono<ToolCatalog> getToolCatalog() {
+        ToolCatalog current = toolCatalog.get();
 
-        return webClient.post()
-                .uri("/mcp")
-                .bodyValue(request)
-                .retrieve()
-                .bodyToMono(Map.class)
+        if (current != null && !current.isExpired(toolCacheTtl)) {
+            return Mono.just(current);
+        }
+
+        if (current != null && !current.isInvalidated()) {
+            refreshToolCatalog().subscribe(catalog -> { }, error -> { });
+            return Mono.just(current);
+        }
+
+        return refreshToolCatalog()
+                .onErrorResume(error -> {
+                    ToolCatalog stale = toolCatalog.get();
+                    if (stale != null) {
+                        log.warn("Could not refresh tools from MCP server, serving catalog v{}: {}",
+                                stale.getVersion(), error.getMessage());
+                        return Mono.just(stale);
+                    }
+                    log.warn("Could not fetch tools from MCP server: {}", error.getMessage());
+                    return Mono.just(new ToolCatalog(0, Collections.emptyList(), Instant.EPOCH));
+                });
+    }
+
+    /**
+     * Mark the cached tool catalog as out of date so the next caller refetches it
+     */
+    public void invalidateToolCatalog() {
+        ToolCatalog current = toolCatalog.get();
+        if (current != null) {
+            toolCatalog.compareAndSet(current, current.invalidate());
+            log.info("Tool catalog v{} invalidated", current.getVersion());
+        }
+    }
+
+    /**
+     * Handle a server-initiated JSON-RPC notification
+     */
+    public void handleNotification(String method, Map<String, Object> params) {
+        log.debug("Received MCP notification: {} {}", method, params);
+
+        if ("notifications/tools/list_changed".equals(method)) {
+            invalidateToolCatalog();
+        }
+    }
+
+    /**
+     * Refresh the tool catalog, sharing one in-flight request between concurrent callers
+     */
+    private Mono<ToolCatalog> refreshToolCatalog() {
+        Mono<ToolCatalog> inFlight = toolCatalogRefresh.get();
+        if (inFlight != null) {
+            return inFlight;
+        }
+
+        AtomicReference<Mono<ToolCatalog>> self = new AtomicReference<>();
+        Mono<ToolCatalog> refresh = fetchTools()
+                .map(this::publishToolCatalog)
+                .doFinally(signal -> toolCatalogRefresh.compareAndSet(self.get(), null))
+                .cache();
+        self.set(refresh);
+
+        if (toolCatalogRefresh.compareAndSet(null, refresh)) {
+            return refresh;
+        }
+
+        Mono<ToolCatalog> winner = toolCatalogRefresh.get();
+        return winner != null ? winner : refresh;
+    }
+
+    /**
+     * Store a freshly fetched tool list, bumping the version only when the tools changed
+     */
+    private ToolCatalog publishToolCatalog(List<McpTool> tools) {
+        toolResultCache.updateSchemas(tools);
+        return toolCatalog.updateAndGet(previous -> {
+            long version = previous == null ? 1
+                    : previous.getTools().equals(tools) ? previous.getVersion()
+                    : previous.getVersion() + 1;
+            return new ToolCatalog(version, tools, Instant.now());
+        });
+    }
+
+    /**
+     * Fetch available tools from MCP server using JSON-RPC 2.0
+     */
+    private Mono<List<McpTool>> fetchTools() {
+        log.debug("Fetching available tools from MCP server");
+
+        return transport.request("tools/list", null)
                 .timeout(Duration.ofSeconds(10))
                 .<List<McpTool>>map(response -> {
                     log.debug("Received response from MCP server: {}", response);
@@ -121,69 +219,176 @@ public class McpClientService {
                     log.warn("No tools found in MCP server response");
                     return Collections.emptyList();
                 })
-                .doOnError(error -> log.error("Error fetching tools from MCP server", error))
-                .onErrorResume(error -> {
-                    log.warn("Could not fetch tools from MCP server: {}", error.getMessage());
-                    return Mono.just(Collections.emptyList());
-                });
+                .doOnError(error -> log.error("Error fetching tools from MCP server", error));
     }
 
     /**
      * Call a tool on the MCP server using JSON-RPC 2.0
      */
     public Mono<String> callTool(String toolName, Map<String, Object> arguments) {
+        return callTool(toolName, arguments, null);
+    }
+
+    /**
+     * Call a tool, serving and storing results in the tool result cache for the given scope
+     */
+    public Mono<String> callTool(String toolName, Map<String, Object> arguments, String cacheScope) {
+        Optional<String> cached = toolResultCache.get(cacheScope, toolName, arguments);
+        if (cached.isPresent()) {
+            return Mono.just(cached.get());
+        }
+        return requestTool(toolName, arguments)
+                .doOnNext(result -> toolResultCache.put(cacheScope, toolName, arguments, result));
+    }
+
+    /**
+     * Send a tools/call request to the MCP server
+     */
+    private Mono<String> requestTool(String toolName, Map<String, Object> arguments) {
         log.debug("Calling tool: {} with arguments: {}", toolName, arguments);
 
         Map<String, Object> params = new HashMap<>();
         params.put("name", toolName);
         params.put("arguments", arguments != null ? arguments : new HashMap<>());
 
-        Map<String, Object> request = new HashMap<>();
-        request.put("jsonrpc", "2.0");
-        request.put("method", "tools/call");
-        request.put("params", params);
-        request.put("id", 3);
-
-        return webClient.post()
-                .uri("/mcp")
-                .bodyValue(request)
-                .retrieve()
-                .bodyToMono(Map.class)
-                .timeout(Duration.ofMillis(timeout))
+        return transport.request("tools/call", params)
                 .map(response -> {
                     log.debug("Tool call response: {}", response);
+                    return toolResultText(response);
+                })
+                .doOnError(error -> log.error("Error calling tool {}", toolName, error))
+                .onErrorResume(error -> {
+                    return Mono.just("Error: Unable to call tool - " + error.getMessage());
+                });
+    }
 
-                    Object resultObj = response.get("result");
-                    if (resultObj instanceof Map) {
-                        @SuppressWarnings("unchecked")
-                        Map<String, Object> result = (Map<String, Object>) resultObj;
+    /**
+     * Call several tools at once, either as one JSON-RPC batch or as parallel requests.
+     * Results are returned in the same order as the calls.
+     */
+    public Mono<List<ToolResult>> callTools(List<ToolCall> calls) {
+        return callTools(calls, null);
+    }
 
-                        Object contentObj = result.get("content");
-                        if (contentObj instanceof List) {
-                            @SuppressWarnings("unchecked")
-                            List<Map<String, Object>> content = (List<Map<String, Object>>) contentObj;
+    /**
+     * Call several tools at once, only fetching the ones missing from the tool result cache
+     */
+    public Mono<List<ToolResult>> callTools(List<ToolCall> calls, String cacheScope) {
+        if (calls == null || calls.isEmpty()) {
+            return Mono.just(Collections.emptyList());
+        }
 
-                            if (!content.isEmpty()) {
-                                Map<String, Object> firstContent = content.get(0);
-                                Object text = firstContent.get("text");
-                                return text != null ? text.toString() : "No response";
-                            }
-                        }
-                    }
+        ToolResult[] results = new ToolResult[calls.size()];
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < calls.size(); i++) {
+            ToolCall call = calls.get(i);
+            Optional<String> cached = toolResultCache.get(cacheScope, call.getToolName(), call.getArguments());
+            if (cached.isPresent()) {
+                results[i] = new ToolResult(call, cached.get());
+            } else {
+                missing.add(i);
+            }
+        }
 
-                    Object errorObj = response.get("error");
-                    if (errorObj != null) {
-                        return "Error: " + errorObj.toString();
-                    }
+        if (missing.isEmpty()) {
+            return Mono.just(Arrays.asList(results));
+        }
 
-                    return "No response from tool";
-                })
-                .doOnError(error -> log.error("Error calling tool {}", toolName, error))
-                .onErrorResume(error -> {
-                    return Mono.just("Error: Unable to call tool - " + error.getMessage());
+        List<ToolCall> toFetch = missing.stream().map(calls::get).collect(Collectors.toList());
+        return requestTools(toFetch)
+                .map(fetched -> {
+                    for (int i = 0; i < fetched.size(); i++) {
+                        ToolResult result = fetched.get(i);
+                        ToolCall call = result.getCall();
+                        toolResultCache.put(cacheScope, call.getToolName(), call.getArguments(), result.getContent());
+                        results[missing.get(i)] = result;
+                    }
+                    return Arrays.asList(results);
                 });
     }
 
+    private Mono<List<ToolResult>> requestTools(List<ToolCall> calls) {
+        if (calls.size() == 1) {
+            ToolCall call = calls.get(0);
+            return requestTool(call.getToolName(), call.getArguments())
+                    .map(result -> List.of(new ToolResult(call, result)));
+        }
+
+        log.debug("Calling {} tools ({})", calls.size(), batchEnabled ? "batch" : "parallel");
+
+        if (batchEnabled) {
+            List<Map<String, Object>> paramsList = calls.stream()
+                    .map(call -> {
+                        Map<String, Object> params = new HashMap<>();
+                        params.put("name", call.getToolName());
+                        params.put("arguments", call.getArguments() != null ? call.getArguments() : new HashMap<>());
+                        return params;
+                    })
+                    .collect(Collectors.toList());
+
+            return transport.requestBatch("tools/call", paramsList)
+                    .map(responses -> {
+                        List<ToolResult> results = new ArrayList<>(calls.size());
+                        for (int i = 0; i < calls.size(); i++) {
+                            results.add(new ToolResult(calls.get(i), toolResultText(responses.get(i))));
+                        }
+                        return results;
+                    })
+                    .onErrorResume(McpTransport.BatchRejectedException.class, error -> {
+                        // Only a refused batch is retried; after a timeout the server is already busy with the calls
+                        log.warn("{}, falling back to parallel calls", error.getMessage());
+                        return callToolsInParallel(calls);
+                    })
+                    .doOnError(error -> log.error("Error calling {} tools as a batch", calls.size(), error))
+                    .onErrorResume(error -> Mono.just(calls.stream()
+                            .map(call -> new ToolResult(call, "Error: Unable to call tool - " + error.getMessage()))
+                            .collect(Collectors.toList())));
+        }
+
+        return callToolsInParallel(calls);
+    }
+
+    private Mono<List<ToolResult>> callToolsInParallel(List<ToolCall> calls) {
+        List<Mono<ToolResult>> results = calls.stream()
+                .map(call -> requestTool(call.getToolName(), call.getArguments())
+                        .map(result -> new ToolResult(call, result)))
+                .collect(Collectors.toList());
+
+        return Mono.zip(results, values -> Arrays.stream(values)
+                .map(ToolResult.class::cast)
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Extract the text content from a tools/call response
+     */
+    private String toolResultText(Map<String, Object> response) {
+        Object resultObj = response.get("result");
+        if (resultObj instanceof Map) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> result = (Map<String, Object>) resultObj;
+
+            Object contentObj = result.get("content");
+            if (contentObj instanceof List) {
+                @SuppressWarnings("unchecked")
+                List<Map<String, Object>> content = (List<Map<String, Object>>) contentObj;
+
+                if (!content.isEmpty()) {
+                    Map<String, Object> firstContent = content.get(0);
+                    Object text = firstContent.get("text");
+                    return text != null ? text.toString() : "No response";
+                }
+            }
+        }
+
+        Object errorObj = response.get("error");
+        if (errorObj != null) {
+            return "Error: " + errorObj.toString();
+        }
+
+        return "No response from tool";
+    }
+
     /**
      * Send a message to the MCP server and get a response (not used in current implementation)
      */
@@ -0,0 +1,117 @@
+package com.example.mcpclient.service;
+
+import com.example.mcpclient.model.McpTool;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.model.function.FunctionCallback;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Exposes an MCP tool to the model as a native function definition.
+ * The model's arguments are forwarded to the MCP server and the tool's text result is returned to it.
+ */
+@Slf4j
+public class McpToolCallback implements FunctionCallback {
+
+    private static final String EMPTY_SCHEMA = "{\"type\": \"object\", \"properties\": {}}";
+
+    private final McpTool tool;
+    private final McpClientService mcpClientService;
+    private final ObjectMapper objectMapper;
+    private final String cacheScope;
+    private final ToolCallBudget budget;
+    private final Duration callTimeout;
+
+    public McpToolCallback(McpTool tool, McpClientService mcpClientService, ObjectMapper objectMapper,
+                           String cacheScope, ToolCallBudget budget, Duration callTimeout) {
+        this.tool = tool;
+        this.mcpClientService = mcpClientService;
+        this.objectMapper = objectMapper;
+        this.cacheScope = cacheScope;
+        this.budget = budget;
+        this.callTimeout = callTimeout;
+    }
+
+    @Override
+    public String getName() {
+        return tool.getName();
+    }
+
+    @Override
+    public String getDescription() {
+        return tool.getDescription() != null ? tool.getDescription() : tool.getName();
+    }
+
+    @Override
+    public String getInputTypeSchema() {
+        if (tool.getInputSchema() == null) {
+            return EMPTY_SCHEMA;
+        }
+        try {
+            return objectMapper.writeValueAsString(tool.getInputSchema());
+        } catch (Exception e) {
+            return EMPTY_SCHEMA;
+        }
+    }
+
+    /**
+     * Invoked by the chat model when it requests this tool.
+     * The Ollama response stream is delivered on a bounded-elastic thread (see AiConfig), so this wait never
+     * holds an HTTP event loop. It is bounded by the tool timeout and the turn's remaining budget, and the
+     * call is cancelled on timeout, on interrupt, or when the turn is cancelled by a disconnecting client.
+     */
+    @Override
+    public String call(String functionInput) {
+        Map<String, Object> arguments = parseArguments(functionInput);
+        log.info("Model requested tool: {} with arguments: {}", tool.getName(), arguments);
+
+        if (!budget.tryAcquire()) {
+            log.info("Tool budget exhausted, not calling {}", tool.getName());
+            return "Tool budget exhausted. Answer using the data already retrieved.";
+        }
+
+        CompletableFuture<String> result = mcpClientService.callTool(tool.getName(), arguments, cacheScope).toFuture();
+        if (!budget.register(result)) {
+            return "Error: Tool call cancelled";
+        }
+        long waitMillis = Math.min(callTimeout.toMillis(), budget.remaining().toMillis());
+        try {
+            return result.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            result.cancel(true);
+            log.warn("Tool {} did not answer within {} ms", tool.getName(), waitMillis);
+            return "Error: Tool call timed out";
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            return "Error: Tool call interrupted";
+        } catch (CancellationException e) {
+            return "Error: Tool call cancelled";
+        } catch (ExecutionException e) {
+            return "Error: Unable to call tool - " + e.getCause().getMessage();
+        } finally {
+            budget.unregister(result);
+        }
+    }
+
+    private Map<String, Object> parseArguments(String functionInput) {
+        if (functionInput == null || functionInput.isBlank()) {
+            return new HashMap<>();
+        }
+        try {
+            return objectMapper.readValue(functionInput, new TypeReference<Map<String, Object>>() {});
+        } catch (Exception e) {
+            log.warn("Could not parse arguments for tool {}: {}", tool.getName(), functionInput);
+            return new HashMap<>();
+        }
+    }
+}
@@ -0,0 +1,583 @@
+package com.example.mcpclient.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.publisher.Sinks;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+import reactor.util.retry.Retry;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+/**
+ * MCP Streamable HTTP transport.
+ * Holds one initialized session (Mcp-Session-Id) for the lifetime of the client, generates request ids
+ * atomically and correlates responses through a pending-response map, so concurrent requests share the
+ * pooled connections and may complete out of order - whether the server answers inline as JSON, as an
+ * SSE stream, or later on the standalone notification stream.
+ */
+@Slf4j
+@Component
+public class McpTransport {
+
+    static final String SESSION_HEADER = "Mcp-Session-Id";
+    private static final int INVALID_REQUEST = -32600;
+    private static final String PROTOCOL_VERSION = "2025-03-26";
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SSE_TYPE =
+            new ParameterizedTypeReference<>() { };
+
+    private final ConnectionProvider connectionProvider;
+    private final LoopResources loopResources; // dedicated event loops, so MCP I/O never waits behind other clients
+    private final WebClient webClient;
+    private final String mcpEndpoint;
+    private final long timeout;
+    private final boolean notificationsEnabled;
+    private final ObjectMapper objectMapper;
+
+    private final AtomicLong requestIds = new AtomicLong();
+    private final Map<Long, Sinks.One<Map<String, Object>>> pending = new ConcurrentHashMap<>();
+    private final AtomicReference<Mono<String>> session = new AtomicReference<>();
+    private final AtomicReference<Disposable> notificationStream = new AtomicReference<>();
+
+    private volatile BiConsumer<String, Map<String, Object>> notificationHandler = (method, params) -> { };
+
+    public McpTransport(
+            @Value("${mcp.server.url}") String mcpServerUrl,
+            @Value("${mcp.server.timeout:30000}") long timeout,
+            @Value("${mcp.server.max-connections:50}") int maxConnections,
+            @Value("${mcp.server.notifications:true}") boolean notificationsEnabled,
+            ObjectMapper objectMapper) {
+        this.mcpEndpoint = mcpServerUrl;
+        this.timeout = timeout;
+        this.notificationsEnabled = notificationsEnabled;
+        this.objectMapper = objectMapper;
+
+        this.connectionProvider = ConnectionProvider.builder("mcp")
+                .maxConnections(maxConnections)
+                .pendingAcquireTimeout(Duration.ofMillis(timeout))
+                .maxIdleTime(Duration.ofSeconds(60))
+                .build();
+
+        this.loopResources = LoopResources.create("mcp-http");
+        this.webClient = WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connectionProvider)
+                        .runOn(loopResources)
+                        .keepAlive(true)))
+                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .defaultHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE + ", " + MediaType.TEXT_EVENT_STREAM_VALUE)
+                .build();
+    }
+
+    /**
+     * Register the handler for server-initiated notifications
+     */
+    public void onNotification(BiConsumer<String, Map<String, Object>> handler) {
+        this.notificationHandler = handler;
+    }
+
+    /**
+     * Send a JSON-RPC request and wait for the response correlated by its id
+     */
+    public Mono<Map<String, Object>> request(String method, Map<String, Object> params) {
+        return session()
+                .flatMap(sessionId -> exchange(sessionId, method, params)
+                        .onErrorResume(SessionExpiredException.class, error -> {
+                            log.info("MCP session {} expired, re-initializing", sessionId);
+                            resetSession(sessionId);
+                            return session().flatMap(newSessionId -> exchange(newSessionId, method, params));
+                        }));
+    }
+
+    /**
+     * Send several requests for the same method as one JSON-RPC batch.
+     * Responses are returned in request order regardless of the order the server answers in.
+     */
+    public Mono<List<Map<String, Object>>> requestBatch(String method, List<Map<String, Object>> paramsList) {
+        return session()
+                .flatMap(sessionId -> exchangeBatch(sessionId, method, paramsList)
+                        .onErrorResume(SessionExpiredException.class, error -> {
+                            log.info("MCP session {} expired, re-initializing", sessionId);
+                            resetSession(sessionId);
+                            return session().flatMap(newSessionId -> exchangeBatch(newSessionId, method, paramsList));
+                        }));
+    }
+
+    /**
+     * Send a JSON-RPC notification (no response expected)
+     */
+    public Mono<Void> notify(String method, Map<String, Object> params) {
+        return session().flatMap(sessionId -> sendNotification(sessionId, method, params));
+    }
+
+    /**
+     * Get the current session id, initializing the MCP session once and sharing it between callers.
+     * A failed initialization is not cached, so the next caller retries it.
+     */
+    public Mono<String> session() {
+        Mono<String> current = session.get();
+        if (current != null) {
+            return current;
+        }
+
+        AtomicReference<Mono<String>> self = new AtomicReference<>();
+        Mono<String> opening = openSession()
+                .doOnError(error -> session.compareAndSet(self.get(), null))
+                .cache();
+        self.set(opening);
+
+        if (session.compareAndSet(null, opening)) {
+            return opening;
+        }
+        Mono<String> winner = session.get();
+        return winner != null ? winner : opening;
+    }
+
+    @PreDestroy
+    public void close() {
+        Disposable stream = notificationStream.getAndSet(null);
+        if (stream != null) {
+            stream.dispose();
+        }
+        Mono<String> current = session.getAndSet(null);
+        String sessionId = current != null ? current.onErrorResume(e -> Mono.empty()).block(Duration.ofSeconds(1)) : null;
+        if (sessionId != null && !sessionId.isEmpty()) {
+            webClient.delete()
+                    .uri(mcpEndpoint)
+                    .header(SESSION_HEADER, sessionId)
+                    .retrieve()
+                    .toBodilessEntity()
+                    .timeout(Duration.ofSeconds(2))
+                    .onErrorResume(error -> Mono.empty())
+                    .block();
+        }
+        connectionProvider.dispose();
+        loopResources.dispose();
+    }
+
+    /**
+     * Run the initialize handshake and capture the session id assigned by the server
+     */
+    private Mono<String> openSession() {
+        long id = requestIds.incrementAndGet();
+
+        Map<String, Object> clientInfo = new HashMap<>();
+        clientInfo.put("name", "spring-mcp-client");
+        clientInfo.put("version", "1.0.0");
+
+        Map<String, Object> params = new HashMap<>();
+        params.put("protocolVersion", PROTOCOL_VERSION);
+        params.put("capabilities", new HashMap<>());
+        params.put("clientInfo", clientInfo);
+
+        log.debug("Initializing MCP session");
+
+        return webClient.post()
+                .uri(mcpEndpoint)
+                .bodyValue(message(id, "initialize", params))
+                .exchangeToMono(response -> {
+                    if (response.statusCode().isError()) {
+                        return response.createException().flatMap(error -> Mono.<String>error(error));
+                    }
+                    String sessionId = response.headers().asHttpHeaders().getFirst(SESSION_HEADER);
+                    return readMessages(response)
+                            .doOnNext(message -> {
+                                if (!isResponseTo(message, id)) {
+                                    dispatch(message);
+                                } else if (message.get("error") != null) {
+                                    throw new IllegalStateException("MCP initialize failed: " + message.get("error"));
+                                } else {
+                                    log.debug("MCP initialized: {}", message.get("result"));
+                                }
+                            })
+                            .then(Mono.just(sessionId != null ? sessionId : ""));
+                })
+                .timeout(Duration.ofMillis(timeout))
+                .flatMap(sessionId -> sendNotification(sessionId, "notifications/initialized", null)
+                        .onErrorResume(error -> {
+                            log.warn("Could not send initialized notification: {}", error.getMessage());
+                            return Mono.empty();
+                        })
+                        .thenReturn(sessionId))
+                .doOnNext(sessionId -> {
+                    log.info("MCP session initialized{}", sessionId.isEmpty() ? " (stateless server)" : ": " + sessionId);
+                    openNotificationStream(sessionId);
+                })
+                .doOnError(error -> log.error("Error initializing MCP session", error));
+    }
+
+    /**
+     * POST one request and resolve it through the pending-response map
+     */
+    private Mono<Map<String, Object>> exchange(String sessionId, String method, Map<String, Object> params) {
+        return Mono.defer(() -> {
+            long id = requestIds.incrementAndGet();
+            Sinks.One<Map<String, Object>> sink = Sinks.one();
+            pending.put(id, sink);
+
+            Disposable post = post(sessionId, message(id, method, params))
+                    .subscribe(this::dispatch, error -> fail(id, error));
+
+            return sink.asMono()
+                    .timeout(Duration.ofMillis(timeout))
+                    .doFinally(signal -> {
+                        post.dispose();
+                        cancelUnanswered(sessionId, List.of(id), signal);
+                    });
+        });
+    }
+
+    /**
+     * POST a batch of requests and resolve each one through the pending-response map.
+     * Fails with a {@link BatchRejectedException} if the server does not accept the batch as a whole.
+     */
+    private Mono<List<Map<String, Object>>> exchangeBatch(String sessionId, String method,
+                                                          List<Map<String, Object>> paramsList) {
+        return Mono.defer(() -> {
+            List<Long> ids = new ArrayList<>();
+            List<Mono<Map<String, Object>>> responses = new ArrayList<>();
+            List<Map<String, Object>> batch = new ArrayList<>();
+
+            for (Map<String, Object> params : paramsList) {
+                long id = requestIds.incrementAndGet();
+                Sinks.One<Map<String, Object>> sink = Sinks.one();
+                pending.put(id, sink);
+                ids.add(id);
+                responses.add(sink.asMono());
+                batch.add(message(id, method, params));
+            }
+
+            Disposable post = post(sessionId, batch)
+                    .subscribe(message -> {
+                        if (isBatchRejection(message)) {
+                            ids.forEach(id -> fail(id, new BatchRejectedException(String.valueOf(message.get("error")))));
+                        } else {
+                            dispatch(message);
+                        }
+                    }, error -> {
+                        Throwable failure = isClientError(error) ? new BatchRejectedException(error.getMessage()) : error;
+                        ids.forEach(id -> fail(id, failure));
+                    });
+
+            return Mono.zip(responses, McpTransport::toResponseList)
+                    .timeout(Duration.ofMillis(timeout))
+                    .doFinally(signal -> {
+                        post.dispose();
+                        cancelUnanswered(sessionId, ids, signal);
+                    });
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> toResponseList(Object[] responses) {
+        List<Map<String, Object>> list = new ArrayList<>(responses.length);
+        for (Object response : responses) {
+            list.add((Map<String, Object>) response);
+        }
+        return list;
+    }
+
+    /**
+     * Forget the requests that are still pending and tell the server to stop working on them: their caller
+     * went away or gave up waiting. Requests that were answered or failed are no longer pending.
+     */
+    private void cancelUnanswered(String sessionId, List<Long> ids, SignalType signal) {
+        List<Long> unanswered = new ArrayList<>();
+        for (Long id : ids) {
+            if (pending.remove(id) != null) {
+                unanswered.add(id);
+            }
+        }
+        if (!unanswered.isEmpty()) {
+            cancelOnServer(sessionId, unanswered, signal == SignalType.CANCEL ? "Client cancelled" : "Client timed out");
+        }
+    }
+
+    private void cancelOnServer(String sessionId, List<Long> ids, String reason) {
+        for (Long id : ids) {
+            Map<String, Object> params = new HashMap<>();
+            params.put("requestId", id);
+            params.put("reason", reason);
+            sendNotification(sessionId, "notifications/cancelled", params)
+                    .subscribe(v -> { }, error -> log.debug("Could not send cancellation for request {}: {}", id, error.getMessage()));
+        }
+        log.debug("Cancelled MCP requests {}", ids);
+    }
+
+    private Mono<Void> sendNotification(String sessionId, String method, Map<String, Object> params) {
+        Map<String, Object> message = new HashMap<>();
+        message.put("jsonrpc", "2.0");
+        message.put("method", method);
+        if (params != null) {
+            message.put("params", params);
+        }
+        return post(sessionId, message)
+                .doOnNext(this::dispatch)
+                .then();
+    }
+
+    /**
+     * POST a message and stream back every JSON-RPC message in the reply, JSON or SSE
+     */
+    private Flux<Map<String, Object>> post(String sessionId, Object body) {
+        return webClient.post()
+                .uri(mcpEndpoint)
+                .headers(headers -> {
+                    if (sessionId != null && !sessionId.isEmpty()) {
+                        headers.set(SESSION_HEADER, sessionId);
+                    }
+                })
+                .bodyValue(body)
+                .exchangeToFlux(response -> {
+                    if (response.statusCode().value() == HttpStatus.NOT_FOUND.value()
+                            && sessionId != null && !sessionId.isEmpty()) {
+                        return response.releaseBody().thenMany(Flux.<Map<String, Object>>error(new SessionExpiredException()));
+                    }
+                    if (response.statusCode().isError()) {
+                        return response.createException().flatMapMany(error -> Flux.<Map<String, Object>>error(error));
+                    }
+                    if (response.statusCode().value() == HttpStatus.ACCEPTED.value()) {
+                        return response.releaseBody().thenMany(Flux.<Map<String, Object>>empty());
+                    }
+                    return readMessages(response);
+                });
+    }
+
+    private Flux<Map<String, Object>> readMessages(ClientResponse response) {
+        MediaType contentType = response.headers().contentType().orElse(MediaType.APPLICATION_JSON);
+        if (MediaType.TEXT_EVENT_STREAM.isCompatibleWith(contentType)) {
+            return response.bodyToFlux(SSE_TYPE)
+                    .mapNotNull(ServerSentEvent::data)
+                    .flatMapIterable(this::parseMessages);
+        }
+        return response.bodyToMono(String.class)
+                .flatMapIterable(this::parseMessages);
+    }
+
+    /**
+     * Open the standalone GET stream the server uses for notifications and deferred responses
+     */
+    private void openNotificationStream(String sessionId) {
+        if (!notificationsEnabled) {
+            return;
+        }
+
+        Disposable stream = webClient.get()
+                .uri(mcpEndpoint)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .headers(headers -> {
+                    if (!sessionId.isEmpty()) {
+                        headers.set(SESSION_HEADER, sessionId);
+                    }
+                })
+                .retrieve()
+                .bodyToFlux(SSE_TYPE)
+                .mapNotNull(ServerSentEvent::data)
+                .flatMapIterable(this::parseMessages)
+                .doOnNext(this::dispatch)
+                .repeatWhen(completed -> completed.delayElements(Duration.ofSeconds(1)))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        .filter(error -> !isUnsupported(error)))
+                .subscribe(message -> { },
+                        error -> log.debug("MCP notification stream unavailable: {}", error.getMessage()));
+
+        Disposable previous = notificationStream.getAndSet(stream);
+        if (previous != null) {
+            previous.dispose();
+        }
+    }
+
+    /**
+     * Route an incoming message to its pending request, the notification handler, or answer a server request
+     */
+    private void dispatch(Map<String, Object> message) {
+        Object method = message.get("method");
+        Long id = toId(message.get("id"));
+
+        if (method == null && id != null) {
+            Sinks.One<Map<String, Object>> sink = pending.remove(id);
+            if (sink != null) {
+                sink.tryEmitValue(message);
+            } else {
+                log.debug("Dropping MCP response for unknown request id {}", id);
+            }
+            return;
+        }
+
+        if (method != null && message.get("id") == null) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> params = message.get("params") instanceof Map
+                    ? (Map<String, Object>) message.get("params")
+                    : Collections.emptyMap();
+            try {
+                notificationHandler.accept(method.toString(), params);
+            } catch (Exception e) {
+                log.warn("Error handling MCP notification {}", method, e);
+            }
+            return;
+        }
+
+        if (method != null) {
+            answerServerRequest(message.get("id"), method.toString());
+        }
+    }
+
+    private void answerServerRequest(Object id, String method) {
+        Map<String, Object> reply = new HashMap<>();
+        reply.put("jsonrpc", "2.0");
+        reply.put("id", id);
+        if ("ping".equals(method)) {
+            reply.put("result", new HashMap<>());
+        } else {
+            Map<String, Object> error = new HashMap<>();
+            error.put("code", -32601);
+            error.put("message", "Method not found: " + method);
+            reply.put("error", error);
+        }
+
+        Mono<String> current = session.get();
+        if (current != null) {
+            current.flatMapMany(sessionId -> post(sessionId, reply))
+                    .subscribe(this::dispatch, error -> log.debug("Could not answer MCP server request {}", method));
+        }
+    }
+
+    private void fail(long id, Throwable error) {
+        Sinks.One<Map<String, Object>> sink = pending.remove(id);
+        if (sink != null) {
+            sink.tryEmitError(error);
+        }
+    }
+
+    /**
+     * Discard the session if it is still the expired one. Several requests can see the same expiry; the first
+     * one opens the replacement and the others must not discard it again.
+     */
+    private void resetSession(String expiredSessionId) {
+        Mono<String> current = session.get();
+        if (current != null && expiredSessionId.equals(resolvedSessionId(current))
+                && session.compareAndSet(current, null)) {
+            log.debug("Discarded MCP session {}", expiredSessionId);
+        }
+    }
+
+    /**
+     * The id a cached session Mono resolved to, or null while it is still opening or if opening failed
+     */
+    private static String resolvedSessionId(Mono<String> session) {
+        CompletableFuture<String> resolved = session.toFuture();
+        return resolved.isDone() && !resolved.isCompletedExceptionally() ? resolved.getNow(null) : null;
+    }
+
+    private Map<String, Object> message(long id, String method, Map<String, Object> params) {
+        Map<String, Object> message = new HashMap<>();
+        message.put("jsonrpc", "2.0");
+        message.put("id", id);
+        message.put("method", method);
+        if (params != null) {
+            message.put("params", params);
+        }
+        return message;
+    }
+
+    private List<Map<String, Object>> parseMessages(String payload) {
+        if (payload == null || payload.isBlank()) {
+            return Collections.emptyList();
+        }
+        try {
+            String trimmed = payload.trim();
+            if (trimmed.startsWith("[")) {
+                return objectMapper.readValue(trimmed, new TypeReference<List<Map<String, Object>>>() {});
+            }
+            return List.of(objectMapper.readValue(trimmed, new TypeReference<Map<String, Object>>() {}));
+        } catch (Exception e) {
+            log.warn("Ignoring malformed MCP message: {}", payload, e);
+            return Collections.emptyList();
+        }
+    }
+
+    private static boolean isResponseTo(Map<String, Object> message, long id) {
+        Long messageId = toId(message.get("id"));
+        return message.get("method") == null && messageId != null && messageId == id;
+    }
+
+    private static Long toId(Object id) {
+        if (id instanceof Number) {
+            return ((Number) id).longValue();
+        }
+        if (id instanceof String) {
+            try {
+                return Long.parseLong((String) id);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isUnsupported(Throwable error) {
+        if (!(error instanceof WebClientResponseException)) {
+            return false;
+        }
+        int status = ((WebClientResponseException) error).getStatusCode().value();
+        return status == HttpStatus.METHOD_NOT_ALLOWED.value() || status == HttpStatus.NOT_FOUND.value();
+    }
+
+    /**
+     * A response without an id reporting an invalid request: the server refused the batch as a whole
+     */
+    private static boolean isBatchRejection(Map<String, Object> message) {
+        if (message.get("id") != null || !(message.get("error") instanceof Map)) {
+            return false;
+        }
+        Object code = ((Map<?, ?>) message.get("error")).get("code");
+        return code instanceof Number && ((Number) code).intValue() == INVALID_REQUEST;
+    }
+
+    private static boolean isClientError(Throwable error) {
+        return error instanceof WebClientResponseException
+                && ((WebClientResponseException) error).getStatusCode().is4xxClientError();
+    }
+
+    /**
+     * Raised when the server does not accept JSON-RPC batches
+     */
+    static class BatchRejectedException extends RuntimeException {
+        BatchRejectedException(String message) {
+            super("MCP server rejected the batch: " + message);
+        }
+    }
+
+    /**
+     * Raised when the server no longer recognizes our session id
+     */
+    static class SessionExpiredException extends RuntimeException {
+        SessionExpiredException() {
+            super("MCP session expired");
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.mcpclient.service;
+
+import com.example.mcpclient.model.ChatSession;
+import com.example.mcpclient.model.ContentArchive;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+/**
+ * Moves the content of older messages off the heap.
+ * Periodically every session's messages except the newest keep-recent ones are compressed into that
+ * session's {@link ContentArchive}; short messages are left alone because they would not save anything.
+ * Archived messages stay in place and inflate their content whenever it is read. The history builder only
+ * reads the prompt window, which covers the newest messages, and request coalescing keys on a history
+ * digest, so turns rarely inflate anything. Opening an old conversation in the UI does, and so does every
+ * journal snapshot when file persistence is enabled, since snapshots contain the full text of every live
+ * session.
+ * <p>
+ * Archived pages count towards the session's estimated size, so the session store's memory budget covers
+ * them, until the session is deleted, evicted or cleared; the pages are then reclaimed by the garbage
+ * collector once no message refers to them any more.
+ */
+@Slf4j
+@Component
+public class MessageArchiver {
+
+    private final SessionService sessionService;
+    private final ContentArchive.Usage usage = new ContentArchive.Usage();
+    private final Supplier<ContentArchive> archives;
+    private final boolean enabled;
+    private final int keepRecent;
+    private final int minChars;
+
+    public MessageArchiver(
+            SessionService sessionService,
+            MeterRegistry meterRegistry,
+            @Value("${chat.archive.enabled:true}") boolean enabled,
+            @Value("${chat.archive.keep-recent:20}") int keepRecent,
+            @Value("${chat.archive.min-chars:512}") int minChars,
+            @Value("${chat.archive.page-bytes:262144}") int pageBytes) {
+        this.sessionService = sessionService;
+        this.archives = () -> new ContentArchive(pageBytes, usage);
+        this.enabled = enabled;
+        this.keepRecent = keepRecent;
+        this.minChars = minChars;
+        Gauge.builder("chat.archive.offheap.bytes", usage, ContentArchive.Usage::getOffHeapBytes).register(meterRegistry);
+        FunctionCounter.builder("chat.archive.messages", usage, ContentArchive.Usage::getArchivedMessages).register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${chat.archive.interval:60000}",
+            initialDelayString = "${chat.archive.interval:60000}")
+    public void archive() {
+        if (!enabled) {
+            return;
+        }
+
+        long chars = 0;
+        for (ChatSession session : sessionService.getAllSessions()) {
+            chars += session.archiveMessages(archives, keepRecent, minChars);
+        }
+        if (chars > 0) {
+            log.debug("Archived {} characters of message content, {} bytes off-heap", chars, usage.getOffHeapBytes());
+        }
+    }
+}
@@ -1,124 +1,370 @@
 package com.example.mcpclient.service;
 
+import com.example.mcpclient.model.ChatSession;
 import com.example.mcpclient.model.McpTool;
-import com.example.mcpclient.model.Message;
+import com.example.mcpclient.model.ToolCall;
+import com.example.mcpclient.model.ToolCatalog;
+import com.example.mcpclient.model.ToolResult;
+import com.example.mcpclient.model.ToolRoute;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.messages.SystemMessage;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.function.FunctionCallback;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.ConnectableFlux;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.*;
-import java.util.function.Consumer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class OllamaService {
 
+    private static final int DECISION_RESULT_PREVIEW_CHARS = 2000;
+
     private final ChatClient chatClient;
     private final ChatClient.Builder chatClientBuilder;
     private final McpClientService mcpClientService;
     private final ObjectMapper objectMapper;
+    private final ToolRouter toolRouter;
+    private final ConversationHistoryManager historyManager;
+    private final ToolResultCompactor resultCompactor;
+    private final MeterRegistry meterRegistry;
 
     /**
-     * Send a message to Ollama and get a response (non-streaming)
+     * "prompt" asks the model for a JSON tool decision before streaming the answer;
+     * "native" passes the MCP tools as function definitions so one streaming request does both
      */
-    public String chat(String userMessage, List<Message> chatHistory, String token) {
-        log.debug("Sending message to Ollama: {}", userMessage);
+    @Value("${chat.tool-mode:prompt}")
+    private String toolMode;
 
-        try {
-            List<org.springframework.ai.chat.messages.Message> messages = buildMessages(userMessage, chatHistory, token);
-            Prompt prompt = new Prompt(messages);
+    @Value("${chat.router.enabled:true}")
+    private boolean routerEnabled;
 
-            String response = chatClient.prompt(prompt)
-                    .stream()
-                    .content()
-                    .collectList()
-                    .map(list -> String.join("", list))
-                    .block();
+    @Value("${chat.router.threshold:0.5}")
+    private double routerThreshold;
 
-            log.debug("Received response from Ollama: {}", response);
-            return response;
+    @Value("${chat.speculative.enabled:false}")
+    private boolean speculativeEnabled;
 
-        } catch (Exception e) {
-            log.error("Error communicating with Ollama", e);
-            return "Error: Unable to communicate with Ollama - " + e.getMessage();
-        }
+    @Value("${chat.agent.max-steps:3}")
+    private int agentMaxSteps;
+
+    @Value("${chat.agent.max-tool-calls:8}")
+    private int agentMaxToolCalls;
+
+    @Value("${chat.agent.time-budget:20000}")
+    private long agentTimeBudget;
+
+    /**
+     * Longest wait for a single native tool call, further capped by what is left of the time budget
+     */
+    @Value("${mcp.server.timeout:30000}")
+    private long toolCallTimeout;
+
+    @Value("${chat.history.formatted-token-budget:1000}")
+    private int formattedHistoryBudget;
+
+    /**
+     * "stable" keeps a byte-identical prefix (instructions and versioned tool catalog, then append-only
+     * history) so Ollama can reuse its KV cache across turns; "legacy" keeps the original layout
+     */
+    @Value("${chat.prompt.layout:stable}")
+    private String promptLayout;
+
+    private volatile CachedSystemPrompt cachedSystemPrompt;
+
+    /**
+     * Send a message to Ollama and get a response (non-streaming)
+     */
+    public Mono<String> chat(ChatSession session, String userMessage, String token) {
+        log.debug("Sending message to Ollama: {}", userMessage);
+
+        return buildMessages(userMessage, session, token)
+                .flatMap(messages -> chatClient.prompt(new Prompt(messages))
+                        .stream()
+                        .content()
+                        .collectList()
+                        .map(list -> String.join("", list)))
+                .doOnNext(response -> log.debug("Received response from Ollama: {}", response))
+                .onErrorResume(e -> {
+                    log.error("Error communicating with Ollama", e);
+                    return Mono.just("Error: Unable to communicate with Ollama - " + e.getMessage());
+                });
     }
 
     /**
-     * Send a message to Ollama and stream the response with MCP tool integration
+     * Stream a response from Ollama with MCP tool integration.
+     * Nothing blocks: tool lookups, decisions and generation are chained on the returned Flux, and
+     * cancelling the subscription (e.g. the client disconnects) cancels whatever is in flight.
      */
-    public void chatStream(String userMessage, List<Message> chatHistory, String token, Consumer<String> chunkConsumer) {
+    public Flux<String> chatStream(ChatSession session, String userMessage, String token) {
         log.debug("Sending streaming message to Ollama with MCP tool support: {}", userMessage);
 
-        try {
-            // First, ask LLM if it needs to call any tools
-            ToolDecision decision = decideTool(userMessage);
+        return Flux.defer(() -> {
+                    // "show more" pages through the previous tool result without calling the tool again
+                    if (session.getResultCursor() != null && ToolResultCompactor.isShowMore(userMessage)) {
+                        return streamNextPage(session, userMessage, token);
+                    }
+
+                    if ("native".equalsIgnoreCase(toolMode)) {
+                        return streamWithNativeTools(session, userMessage, token);
+                    }
+
+                    // First, try the local router, then ask LLM if it needs to call any tools
+                    return routeTool(userMessage).flatMapMany(routed -> {
+                        if (routed.shouldCallTool()) {
+                            return streamToolResponse(session, routed, userMessage, token);
+                        }
+                        if (speculativeEnabled) {
+                            return chatStreamSpeculatively(session, userMessage, token);
+                        }
+                        return decideTool(userMessage).flatMapMany(decision -> {
+                            if (decision.shouldCallTool()) {
+                                return streamToolResponse(session, decision, userMessage, token);
+                            }
+                            // No tool needed, regular chat
+                            log.debug("No tool call needed, proceeding with regular chat");
+                            return streamRegularResponse(userMessage, session, token);
+                        });
+                    });
+                })
+                .onErrorResume(e -> {
+                    log.error("Error communicating with Ollama", e);
+                    return Flux.just("Error: Unable to communicate with Ollama - " + e.getMessage());
+                });
+    }
 
-            if (decision != null && decision.shouldCallTool()) {
-                log.info("LLM decided to call tool: {} with arguments: {}", decision.toolName, decision.arguments);
+    /**
+     * Run the tool loop and stream the formatted answer.
+     * Each step calls all decided tools concurrently, then shows the model the results so far so it can
+     * request dependent lookups (e.g. find a patient by name, then fetch notes by id) until it needs
+     * nothing more or the step, call or time budget runs out.
+     */
+    private Flux<String> streamToolResponse(ChatSession session, ToolDecision decision, String userMessage,
+                                            String token) {
+        ToolLoop loop = new ToolLoop(userMessage, ToolResultCache.scopeFor(session.getId(), token),
+                new ToolCallBudget(agentMaxToolCalls, Duration.ofMillis(agentTimeBudget)));
 
-                // Call the tool
-                String toolResult = mcpClientService.callTool(decision.toolName, decision.arguments).block();
+        return runToolStep(loop, decision, 1)
+                .thenMany(Flux.defer(() -> {
+                    meterRegistry.summary("chat.agent.tool.calls").record(loop.results.size());
 
-                // Now ask Ollama to format the response
-                streamFormattedResponse(userMessage, toolResult, chatHistory, token, chunkConsumer);
-            } else {
-                // No tool needed, regular chat
-                log.debug("No tool call needed, proceeding with regular chat");
-                streamRegularResponse(userMessage, chatHistory, token, chunkConsumer);
-            }
+                    ToolResultCompactor.CompactedResults compacted = resultCompactor.compact(userMessage, loop.results);
+                    session.setResultCursor(compacted.getCursor());
 
-        } catch (Exception e) {
-            log.error("Error communicating with Ollama", e);
-            chunkConsumer.accept("Error: Unable to communicate with Ollama - " + e.getMessage());
-        }
+                    // Now ask Ollama to format the response
+                    return streamFormattedResponse(userMessage, compacted.getResults(), session, token);
+                }));
     }
 
     /**
-     * Ask the LLM to decide if a tool should be called
+     * Call the tools of one step, then ask whether another step is needed.
+     * Both wait at most for what is left of the time budget; once it runs out the loop ends with the results
+     * gathered so far.
      */
-    private ToolDecision decideTool(String userMessage) {
-        try {
-            List<McpTool> tools = mcpClientService.listTools().block();
-            if (tools == null || tools.isEmpty()) {
-                return null;
+    private Mono<Void> runToolStep(ToolLoop loop, ToolDecision decision, int step) {
+        List<ToolCall> calls = new ArrayList<>();
+        for (ToolCall call : decision.calls) {
+            if (loop.executed.add(call) && loop.budget.tryAcquire()) {
+                calls.add(call);
             }
+        }
+        if (calls.isEmpty()) {
+            return Mono.empty();
+        }
 
-            String prompt = buildToolDecisionPrompt(userMessage, tools);
+        log.info("Tool step {}: calling {}", step, calls);
 
-            List<org.springframework.ai.chat.messages.Message> messages = Arrays.asList(
-                    new SystemMessage("You are a tool selection assistant. Respond ONLY with valid JSON."),
-                    new UserMessage(prompt)
-            );
+        // Call all tools of this step together
+        return withinBudget(mcpClientService.callTools(calls, loop.cacheScope), loop, step, "calling tools")
+                .flatMap(stepResults -> {
+                    loop.results.addAll(stepResults);
 
-            Prompt chatPrompt = new Prompt(messages);
+                    if (step >= agentMaxSteps || loop.budget.isExpired()) {
+                        log.debug("Tool loop stopped after {} steps ({} calls)", step, loop.budget.getUsed());
+                        return Mono.<Void>empty();
+                    }
+                    return withinBudget(decideTool(loop.userMessage, loop.results), loop, step, "deciding the next step")
+                            .flatMap(next -> next.shouldCallTool() ? runToolStep(loop, next, step + 1) : Mono.<Void>empty());
+                });
+    }
 
-            String llmResponse = chatClient.prompt(chatPrompt)
-                    .call()
-                    .content();
+    private static <T> Mono<T> withinBudget(Mono<T> work, ToolLoop loop, int step, String activity) {
+        return work.timeout(loop.budget.remaining())
+                .onErrorResume(TimeoutException.class, error -> {
+                    log.info("Tool loop ran out of time in step {} while {}, answering with {} results",
+                            step, activity, loop.results.size());
+                    return Mono.empty();
+                });
+    }
 
-            log.debug("Tool decision response: {}", llmResponse);
+    /**
+     * Stream the next page of the previous tool result
+     */
+    private Flux<String> streamNextPage(ChatSession session, String userMessage, String token) {
+        ToolResultCompactor.CompactedResults page = resultCompactor.nextPage(session.getResultCursor());
+        session.setResultCursor(page.getCursor());
+        log.debug("Serving next page of {} from the stored result", page.getResults().isEmpty()
+                ? "nothing" : page.getResults().get(0).getCall().getToolName());
 
-            return parseToolDecision(llmResponse);
+        return streamFormattedResponse(userMessage, page.getResults(), session, token);
+    }
 
-        } catch (Exception e) {
-            log.error("Error in tool decision", e);
-            return null;
+    /**
+     * Run the tool decision and the plain (no tool) response at the same time.
+     * The plain response is buffered while the decision runs; it is replayed if no tool is needed,
+     * otherwise its subscription is cancelled and the generated chunks are counted as wasted.
+     */
+    private Flux<String> chatStreamSpeculatively(ChatSession session, String userMessage, String token) {
+        return buildMessages(userMessage, session, token).flatMapMany(messages -> {
+            AtomicLong generatedChunks = new AtomicLong();
+            ConnectableFlux<String> speculative = contentStream(messages, Collections.emptyList())
+                    .doOnNext(chunk -> generatedChunks.incrementAndGet())
+                    .replay();
+            Disposable generation = speculative.connect();
+
+            return decideTool(userMessage)
+                    .flatMapMany(decision -> {
+                        if (decision.shouldCallTool()) {
+                            generation.dispose();
+                            meterRegistry.counter("chat.speculative.turns", "outcome", "discarded").increment();
+                            meterRegistry.counter("chat.speculative.wasted.tokens").increment(generatedChunks.get());
+                            log.debug("Discarded speculative response after {} chunks", generatedChunks.get());
+
+                            return streamToolResponse(session, decision, userMessage, token);
+                        }
+
+                        meterRegistry.counter("chat.speculative.turns", "outcome", "kept").increment();
+                        log.debug("No tool call needed, using speculative response ({} chunks buffered)", generatedChunks.get());
+
+                        return logStream(speculative);
+                    })
+                    .doOnCancel(generation::dispose)
+                    .doOnError(error -> generation.dispose());
+        });
+    }
+
+    /**
+     * Stream a response with the MCP tools registered as native functions.
+     * The model either answers directly or requests tool calls, which Spring AI executes and feeds back
+     * within the same streaming request, so no separate decision inference is needed.
+     */
+    private Flux<String> streamWithNativeTools(ChatSession session, String userMessage, String token) {
+        String cacheScope = ToolResultCache.scopeFor(session.getId(), token);
+        ToolCallBudget budget = new ToolCallBudget(agentMaxToolCalls, Duration.ofMillis(agentTimeBudget));
+
+        return Mono.zip(mcpClientService.listTools(), buildMessages(userMessage, session, token))
+                .flatMapMany(toolsAndMessages -> {
+                    List<FunctionCallback> callbacks = new ArrayList<>();
+                    for (McpTool tool : toolsAndMessages.getT1()) {
+                        callbacks.add(new McpToolCallback(tool, mcpClientService, objectMapper, cacheScope, budget,
+                                Duration.ofMillis(toolCallTimeout)));
+                    }
+
+                    List<org.springframework.ai.chat.messages.Message> messages = toolsAndMessages.getT2();
+                    messages.add(1, new SystemMessage("""
+                            Call the provided tools whenever the user asks about patient data.
+                            After receiving tool results, present them clearly and professionally.
+                            Do not mention JSON or technical details.
+                            """));
+
+                    return streamResponse(messages, callbacks);
+                })
+                .doOnCancel(budget::cancel);
+    }
+
+    /**
+     * Try to pick the tool locally without an LLM call; no tool calls when the router is not confident enough
+     */
+    private Mono<ToolDecision> routeTool(String userMessage) {
+        if (!routerEnabled) {
+            return Mono.just(ToolDecision.NONE);
         }
+
+        return mcpClientService.getToolCatalog()
+                .map(catalog -> {
+                    long start = System.nanoTime();
+                    Optional<ToolRoute> route = toolRouter.route(userMessage, catalog);
+                    meterRegistry.timer("chat.router.latency").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+                    boolean hit = route.isPresent() && route.get().getConfidence() >= routerThreshold;
+                    meterRegistry.counter("chat.router.requests", "outcome", hit ? "hit" : "fallback").increment();
+
+                    if (!hit) {
+                        return ToolDecision.NONE;
+                    }
+
+                    log.info("Router selected tools {} with confidence {}", route.get().getCalls(), route.get().getConfidence());
+                    return new ToolDecision(route.get().getCalls());
+                })
+                .defaultIfEmpty(ToolDecision.NONE)
+                .onErrorResume(e -> {
+                    log.warn("Tool router failed, falling back to LLM decision", e);
+                    return Mono.just(ToolDecision.NONE);
+                });
+    }
+
+    /**
+     * Ask the LLM to decide if a tool should be called
+     */
+    private Mono<ToolDecision> decideTool(String userMessage) {
+        return decideTool(userMessage, Collections.emptyList());
+    }
+
+    /**
+     * Ask the LLM whether more tools are needed, given the results retrieved so far
+     */
+    private Mono<ToolDecision> decideTool(String userMessage, List<ToolResult> previousResults) {
+        return mcpClientService.listTools()
+                .flatMap(tools -> {
+                    if (tools.isEmpty()) {
+                        return Mono.just(ToolDecision.NONE);
+                    }
+
+                    String prompt = buildToolDecisionPrompt(userMessage, tools, previousResults);
+
+                    List<org.springframework.ai.chat.messages.Message> messages = Arrays.asList(
+                            new SystemMessage("You are a tool selection assistant. Respond ONLY with valid JSON."),
+                            new UserMessage(prompt)
+                    );
+
+                    Prompt chatPrompt = new Prompt(messages);
+
+                    // Collected from the stream rather than call() so no thread waits on the model
+                    return chatClient.prompt(chatPrompt)
+                            .stream()
+                            .content()
+                            .collect(Collectors.joining())
+                            .doOnNext(llmResponse -> log.debug("Tool decision response: {}", llmResponse))
+                            .map(this::parseToolDecision);
+                })
+                .defaultIfEmpty(ToolDecision.NONE)
+                .onErrorResume(e -> {
+                    log.error("Error in tool decision", e);
+                    return Mono.just(ToolDecision.NONE);
+                });
     }
 
     /**
      * Build prompt for tool decision
      */
-    private String buildToolDecisionPrompt(String userMessage, List<McpTool> tools) {
+    private String buildToolDecisionPrompt(String userMessage, List<McpTool> tools, List<ToolResult> previousResults) {
         StringBuilder sb = new StringBuilder();
         sb.append("Available tools:\n");
 
@@ -131,9 +377,25 @@ public class OllamaService {
         }
 
         sb.append("User request: \"").append(userMessage).append("\"\n\n");
+
+        if (!previousResults.isEmpty()) {
+            sb.append("Tools already called and their results:\n");
+            for (ToolResult result : previousResults) {
+                String content = result.getContent() != null ? result.getContent() : "";
+                if (content.length() > DECISION_RESULT_PREVIEW_CHARS) {
+                    content = content.substring(0, DECISION_RESULT_PREVIEW_CHARS) + "...";
+                }
+                sb.append("- ").append(result.getCall().getToolName())
+                        .append(" ").append(formatArguments(result.getCall().getArguments()))
+                        .append(":\n").append(content).append("\n\n");
+            }
+            sb.append("Only request tools whose input depends on these results or that are still missing. ");
+            sb.append("If the results already answer the request, respond with none.\n\n");
+        }
+
         sb.append("Analyze the request and respond with ONLY a JSON object:\n\n");
-        sb.append("To call a tool:\n");
-        sb.append("{\"action\": \"call\", \"tool\": \"tool_name\", \"arguments\": {...}}\n\n");
+        sb.append("To call one or more tools (list every tool the request needs):\n");
+        sb.append("{\"action\": \"call\", \"calls\": [{\"tool\": \"tool_name\", \"arguments\": {...}}]}\n\n");
         sb.append("If no tool needed:\n");
         sb.append("{\"action\": \"none\"}\n\n");
         sb.append("Extract values from the user's message. Use numbers for IDs, strings for names.\n");
@@ -142,6 +404,17 @@ public class OllamaService {
         return sb.toString();
     }
 
+    /**
+     * Format tool call arguments for the decision prompt
+     */
+    private String formatArguments(Map<String, Object> arguments) {
+        try {
+            return objectMapper.writeValueAsString(arguments != null ? arguments : Collections.emptyMap());
+        } catch (Exception e) {
+            return String.valueOf(arguments);
+        }
+    }
+
     /**
      * Format parameters from schema
      */
@@ -165,11 +438,11 @@ public class OllamaService {
     }
 
     /**
-     * Parse tool decision from LLM
+     * Parse tool decision from LLM; no tool calls when the response is not a valid call decision
      */
     private ToolDecision parseToolDecision(String response) {
         if (response == null || response.trim().isEmpty()) {
-            return null;
+            return ToolDecision.NONE;
         }
 
         try {
@@ -194,28 +467,92 @@ public class OllamaService {
             String action = (String) json.get("action");
 
             if (!"call".equalsIgnoreCase(action)) {
-                return null;
+                return ToolDecision.NONE;
             }
 
-            String toolName = (String) json.get("tool");
-
-            @SuppressWarnings("unchecked")
-            Map<String, Object> arguments = (Map<String, Object>) json.getOrDefault("arguments", new HashMap<>());
+            List<ToolCall> calls = new ArrayList<>();
+            Object callsObj = json.get("calls");
+            if (callsObj instanceof List) {
+                for (Object callObj : (List<?>) callsObj) {
+                    if (callObj instanceof Map) {
+                        @SuppressWarnings("unchecked")
+                        Map<String, Object> call = (Map<String, Object>) callObj;
+                        addToolCall(calls, call);
+                    }
+                }
+            } else {
+                // Single-tool form: {"action": "call", "tool": ..., "arguments": ...}
+                addToolCall(calls, json);
+            }
 
-            return new ToolDecision(toolName, arguments);
+            return new ToolDecision(calls);
 
         } catch (Exception e) {
             log.warn("Failed to parse tool decision: {}", response, e);
-            return null;
+            return ToolDecision.NONE;
+        }
+    }
+
+    /**
+     * Add a tool call parsed from the decision JSON, skipping entries without a tool name
+     */
+    private void addToolCall(List<ToolCall> calls, Map<String, Object> call) {
+        Object toolName = call.get("tool");
+        if (toolName == null || toolName.toString().isEmpty()) {
+            return;
         }
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> arguments = call.get("arguments") instanceof Map
+                ? (Map<String, Object>) call.get("arguments")
+                : new HashMap<>();
+
+        calls.add(new ToolCall(toolName.toString(), arguments));
     }
 
     /**
-     * Stream formatted response with tool result
+     * Format the results of all tool calls into one block for the prompt
      */
-    private void streamFormattedResponse(String userMessage, String toolResult,
-                                         List<Message> chatHistory, String token,
-                                         Consumer<String> chunkConsumer) {
+    private String formatToolResults(List<ToolResult> toolResults) {
+        if (toolResults == null || toolResults.isEmpty()) {
+            return "No data retrieved.";
+        }
+        if (toolResults.size() == 1) {
+            return toolResults.get(0).getContent();
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (ToolResult result : toolResults) {
+            sb.append("### ").append(result.getCall().getToolName()).append("\n");
+            sb.append(result.getContent()).append("\n\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Stream formatted response with tool results
+     */
+    private Flux<String> streamFormattedResponse(String userMessage, List<ToolResult> toolResults,
+                                                 ChatSession session, String token) {
+        if (isStableLayout()) {
+            // Same prefix as a regular turn; the retrieved data goes after the question
+            return buildMessages(userMessage, session, token).flatMapMany(messages -> {
+                messages.add(new SystemMessage("""
+                        Retrieved data:
+                        %s
+
+                        Answer the user's last message using this data.
+                        Format this information clearly and professionally.
+                        Present it in a natural, conversational way.
+                        Use formatting (headings, lists, tables) where helpful.
+                        Do not mention JSON or technical details.
+                        """.formatted(formatToolResults(toolResults))));
+
+                recordPromptSize(messages);
+                return streamResponse(messages);
+            });
+        }
+
         List<org.springframework.ai.chat.messages.Message> messages = new ArrayList<>();
 
         messages.add(new SystemMessage(String.format("""
@@ -228,107 +565,162 @@ public class OllamaService {
                 Present it in a natural, conversational way.
                 Use formatting (headings, lists, tables) where helpful.
                 Do not mention JSON or technical details.
-                """, userMessage, toolResult)));
-
-        if (chatHistory != null && !chatHistory.isEmpty()) {
-            int start = Math.max(0, chatHistory.size() - 4);
-            chatHistory.subList(start, chatHistory.size()).forEach(msg -> {
-                if ("user".equals(msg.getRole())) {
-                    messages.add(new UserMessage(msg.getContent()));
-                } else {
-                    messages.add(new org.springframework.ai.chat.messages.AssistantMessage(msg.getContent()));
-                }
-            });
-        }
+                """, userMessage, formatToolResults(toolResults))));
+
+        messages.addAll(historyManager.history(session, userMessage, formattedHistoryBudget));
 
         messages.add(new UserMessage("Please present this information."));
 
-        streamResponse(messages, chunkConsumer);
+        recordPromptSize(messages);
+        return streamResponse(messages);
+    }
+
+    /**
+     * Record the estimated size of a prompt carrying tool results
+     */
+    private void recordPromptSize(List<org.springframework.ai.chat.messages.Message> messages) {
+        int tokens = 0;
+        for (org.springframework.ai.chat.messages.Message message : messages) {
+            tokens += historyManager.estimateTokens(message.getContent());
+        }
+        meterRegistry.summary("chat.prompt.tokens", "stage", "formatted").record(tokens);
+        log.debug("Formatted prompt: {} messages, ~{} tokens", messages.size(), tokens);
     }
 
     /**
      * Stream regular response without tools
      */
-    private void streamRegularResponse(String userMessage, List<Message> chatHistory,
-                                       String token, Consumer<String> chunkConsumer) {
-        List<org.springframework.ai.chat.messages.Message> messages = buildMessages(userMessage, chatHistory, token);
-        streamResponse(messages, chunkConsumer);
+    private Flux<String> streamRegularResponse(String userMessage, ChatSession session, String token) {
+        return buildMessages(userMessage, session, token).flatMapMany(this::streamResponse);
     }
 
     /**
      * Stream response helper
      */
-    private void streamResponse(List<org.springframework.ai.chat.messages.Message> messages,
-                                Consumer<String> chunkConsumer) {
+    private Flux<String> streamResponse(List<org.springframework.ai.chat.messages.Message> messages) {
+        return streamResponse(messages, Collections.emptyList());
+    }
+
+    /**
+     * Stream response helper with native function callbacks
+     */
+    private Flux<String> streamResponse(List<org.springframework.ai.chat.messages.Message> messages,
+                                        List<FunctionCallback> functionCallbacks) {
+        return logStream(contentStream(messages, functionCallbacks));
+    }
+
+    /**
+     * Build the streaming content for a prompt
+     */
+    private Flux<String> contentStream(List<org.springframework.ai.chat.messages.Message> messages,
+                                       List<FunctionCallback> functionCallbacks) {
         Prompt prompt = new Prompt(messages);
         ChatClient streamingClient = chatClientBuilder.build();
 
-        Flux<String> contentStream = streamingClient.prompt(prompt)
+        ChatClient.ChatClientRequestSpec request = streamingClient.prompt(prompt);
+        if (!functionCallbacks.isEmpty()) {
+            request = request.functions(functionCallbacks.toArray(new FunctionCallback[0]));
+        }
+
+        return request
                 .stream()
                 .content()
                 .filter(content -> content != null && !content.isEmpty());
+    }
 
-        contentStream
+    /**
+     * Log a content stream and count generations cancelled by the subscriber.
+     * Cancelling disposes the upstream subscription, which closes the request to Ollama.
+     */
+    private Flux<String> logStream(Flux<String> contentStream) {
+        AtomicLong generatedChunks = new AtomicLong();
+        return contentStream
                 .doOnNext(chunk -> {
+                    generatedChunks.incrementAndGet();
                     log.trace("Chunk: {}", chunk);
-                    chunkConsumer.accept(chunk);
                 })
-                .doOnError(error -> {
-                    log.error("Streaming error", error);
-                    chunkConsumer.accept("\n\n[Error: " + error.getMessage() + "]");
+                .doOnCancel(() -> {
+                    meterRegistry.counter("chat.generation.cancelled", "backend", "ollama").increment();
+                    meterRegistry.counter("chat.generation.cancelled.tokens", "backend", "ollama")
+                            .increment(generatedChunks.get());
+                    log.info("Generation cancelled after {} chunks", generatedChunks.get());
                 })
-                .doOnComplete(() -> log.debug("Stream complete"))
-                .blockLast();
+                .doOnError(error -> log.error("Streaming error", error))
+                .doOnComplete(() -> log.debug("Stream complete"));
     }
 
     /**
      * Build messages for regular chat
      */
+    private Mono<List<org.springframework.ai.chat.messages.Message>> buildMessages(
+            String userMessage, ChatSession session, String token) {
+        return mcpClientService.getToolCatalog()
+                .map(catalog -> buildMessages(userMessage, session, token, catalog));
+    }
+
     private List<org.springframework.ai.chat.messages.Message> buildMessages(
-            String userMessage, List<Message> chatHistory, String token) {
+            String userMessage, ChatSession session, String token, ToolCatalog catalog) {
 
         List<org.springframework.ai.chat.messages.Message> messages = new ArrayList<>();
 
-        List<McpTool> tools = mcpClientService.listTools().block();
-        String toolsDescription = formatToolsForPrompt(tools);
-
-        messages.add(new SystemMessage("""
-                You are a helpful AI assistant with access to a patient care system.
-                
-                %s
-                
-                When users ask about patient data, I will retrieve it for you automatically.
-                Your job is to have natural conversations and present information clearly.
-                """.formatted(toolsDescription)));
+        messages.add(new SystemMessage(systemPrompt(catalog)));
 
         if (token != null && !token.isEmpty()) {
             messages.add(new SystemMessage("Authentication is available."));
         }
 
-        if (chatHistory != null && !chatHistory.isEmpty()) {
-            chatHistory.forEach(msg -> {
-                if ("user".equals(msg.getRole())) {
-                    messages.add(new UserMessage(msg.getContent()));
-                } else {
-                    messages.add(new org.springframework.ai.chat.messages.AssistantMessage(msg.getContent()));
-                }
-            });
-        }
+        messages.addAll(historyManager.history(session, userMessage));
 
         messages.add(new UserMessage(userMessage));
 
         return messages;
     }
 
+    /**
+     * System prompt for a tool catalog; in the stable layout it is rendered once per catalog version
+     */
+    private String systemPrompt(ToolCatalog catalog) {
+        if (!isStableLayout()) {
+            return renderSystemPrompt(catalog != null ? catalog.getTools() : null, null);
+        }
+
+        long version = catalog != null ? catalog.getVersion() : 0;
+        CachedSystemPrompt cached = cachedSystemPrompt;
+        if (cached == null || cached.version != version) {
+            List<McpTool> tools = catalog != null ? new ArrayList<>(catalog.getTools()) : new ArrayList<>();
+            tools.sort(Comparator.comparing(McpTool::getName, Comparator.nullsLast(Comparator.naturalOrder())));
+            cached = new CachedSystemPrompt(version, renderSystemPrompt(tools, version));
+            cachedSystemPrompt = cached;
+        }
+        return cached.text;
+    }
+
+    private String renderSystemPrompt(List<McpTool> tools, Long catalogVersion) {
+        String toolsDescription = formatToolsForPrompt(tools, catalogVersion);
+
+        return """
+                You are a helpful AI assistant with access to a patient care system.
+                
+                %s
+                
+                When users ask about patient data, I will retrieve it for you automatically.
+                Your job is to have natural conversations and present information clearly.
+                """.formatted(toolsDescription);
+    }
+
     /**
      * Format tools for prompt
      */
-    private String formatToolsForPrompt(List<McpTool> tools) {
+    private String formatToolsForPrompt(List<McpTool> tools, Long catalogVersion) {
         if (tools == null || tools.isEmpty()) {
             return "No tools available.";
         }
 
-        StringBuilder sb = new StringBuilder("Available capabilities:\n\n");
+        StringBuilder sb = new StringBuilder("Available capabilities");
+        if (catalogVersion != null) {
+            sb.append(" (catalog v").append(catalogVersion).append(")");
+        }
+        sb.append(":\n\n");
         for (McpTool tool : tools) {
             sb.append("- ").append(tool.getDescription()).append("\n");
         }
@@ -336,20 +728,54 @@ public class OllamaService {
         return sb.toString();
     }
 
+    private boolean isStableLayout() {
+        return "stable".equalsIgnoreCase(promptLayout);
+    }
+
+    /**
+     * Rendered system prompt for one catalog version
+     */
+    private static class CachedSystemPrompt {
+        final long version;
+        final String text;
+
+        CachedSystemPrompt(long version, String text) {
+            this.version = version;
+            this.text = text;
+        }
+    }
+
+    /**
+     * State of the tool loop for one turn
+     */
+    private static class ToolLoop {
+        final String userMessage;
+        final String cacheScope;
+        final ToolCallBudget budget;
+        final List<ToolResult> results = new ArrayList<>();
+        final Set<ToolCall> executed = new HashSet<>();
+
+        ToolLoop(String userMessage, String cacheScope, ToolCallBudget budget) {
+            this.userMessage = userMessage;
+            this.cacheScope = cacheScope;
+            this.budget = budget;
+        }
+    }
+
     /**
      * Tool decision holder
      */
     private static class ToolDecision {
-        String toolName;
-        Map<String, Object> arguments;
+        static final ToolDecision NONE = new ToolDecision(Collections.emptyList());
+
+        List<ToolCall> calls;
 
-        ToolDecision(String toolName, Map<String, Object> arguments) {
-            this.toolName = toolName;
-            this.arguments = arguments;
+        ToolDecision(List<ToolCall> calls) {
+            this.calls = calls;
         }
 
         boolean shouldCallTool() {
-            return toolName != null && !toolName.isEmpty();
+            return calls != null && !calls.isEmpty();
         }
     }
 }
\ No newline at end of file
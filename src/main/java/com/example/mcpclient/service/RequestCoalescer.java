@@ -0,0 +1,156 @@
+package com.example.mcpclient.service;
+
+import com.example.mcpclient.model.ChatSession;
+import com.example.mcpclient.model.Message;
+import com.example.mcpclient.model.ToolCatalog;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Lets concurrent identical turns share one answer.
+ * A turn is identical when the normalized prompt, the auth scope, the conversation so far and the tool
+ * catalog match. The tool decision is made from the prompt and the catalog only, so it is the same for
+ * all of them as well. The first such turn (the leader) runs the whole pipeline: admission, tool decision,
+ * tool calls and generation. Turns arriving while it is in flight replay its chunks from the start and
+ * then follow it live. Followers never take an admission slot. Generation stops only when every turn
+ * sharing it has gone.
+ * <p>
+ * The answer is fetched with the leader's token, so the scope is the one the tool result cache uses
+ * ({@link ToolResultCache#scopeFor}): the exact token, or the session when there is none. Answers are
+ * never shared between principals. The conversation is keyed by the session's incremental history digest,
+ * so a turn hashes only the messages added since the previous one.
+ */
+@Slf4j
+@Component
+public class RequestCoalescer {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern TRAILING_PUNCTUATION = Pattern.compile("[\\s.!?]+$");
+    private static final char SEPARATOR = '\u0000';
+
+    private final McpClientService mcpClientService;
+    private final boolean enabled;
+    private final Map<String, InFlight> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public RequestCoalescer(
+            McpClientService mcpClientService,
+            MeterRegistry meterRegistry,
+            @Value("${chat.coalescing.enabled:true}") boolean enabled) {
+        this.mcpClientService = mcpClientService;
+        this.enabled = enabled;
+        this.hits = Counter.builder("chat.coalescing.requests").tag("outcome", "hit").register(meterRegistry);
+        this.misses = Counter.builder("chat.coalescing.requests").tag("outcome", "miss").register(meterRegistry);
+        Gauge.builder("chat.coalescing.inflight", inFlight, Map::size).register(meterRegistry);
+    }
+
+    /**
+     * The answer chunks for a turn: shared with an identical turn in flight, otherwise produced by the work.
+     * The session must already hold the turn's user message.
+     */
+    public Flux<String> share(ChatSession session, String userMessage, String token, Supplier<Flux<String>> work) {
+        if (!enabled) {
+            return Flux.defer(work);
+        }
+
+        return mcpClientService.getToolCatalog()
+                .map(ToolCatalog::getVersion)
+                .onErrorReturn(-1L)
+                .defaultIfEmpty(-1L)
+                .flatMapMany(catalogVersion -> {
+                    String key = key(session, userMessage, token, catalogVersion);
+
+                    InFlight created = new InFlight(key, session, work);
+                    InFlight shared = inFlight.putIfAbsent(key, created);
+                    if (shared == null) {
+                        misses.increment();
+                        return created.chunks;
+                    }
+
+                    hits.increment();
+                    log.info("Session {} joins the in-flight answer of session {}", session.getId(), shared.leader.getId());
+                    // Carry over the "show more" cursor so follow-ups page through the same result
+                    return shared.chunks
+                            .doOnComplete(() -> session.setResultCursor(shared.leader.getResultCursor()));
+                });
+    }
+
+    private String key(ChatSession session, String userMessage, String token, long catalogVersion) {
+        MessageDigest digest = sha256();
+        update(digest, ToolResultCache.scopeFor(session.getId(), token));
+        update(digest, Long.toString(catalogVersion));
+        update(digest, normalize(userMessage));
+
+        List<Message> history = session.getMessages();
+        int end = history.size();
+        // The current user message is keyed in its normalized form above
+        if (end > 0 && "user".equals(history.get(end - 1).getRole())
+                && userMessage.equals(history.get(end - 1).getContent())) {
+            end--;
+        }
+        digest.update(session.historyDigest(end));
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Case, whitespace and trailing punctuation do not change the question
+     */
+    static String normalize(String prompt) {
+        if (prompt == null) {
+            return "";
+        }
+        String collapsed = WHITESPACE.matcher(prompt.trim().toLowerCase(Locale.ROOT)).replaceAll(" ");
+        return TRAILING_PUNCTUATION.matcher(collapsed).replaceAll("");
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value != null) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) SEPARATOR);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * One shared answer: started by the first subscriber, replayed to later ones, and cancelled when the
+     * last one leaves. It is unregistered as soon as it terminates so later turns start a fresh answer.
+     */
+    private class InFlight {
+        final ChatSession leader;
+        final Flux<String> chunks;
+
+        InFlight(String key, ChatSession leader, Supplier<Flux<String>> work) {
+            this.leader = leader;
+            this.chunks = Flux.defer(work)
+                    .doFinally(signal -> inFlight.remove(key, this))
+                    .replay()
+                    .refCount();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.mcpclient.service;
+
+import com.example.mcpclient.model.ChatSession;
+
+/**
+ * Notified when the session store evicts a session, e.g. to archive it before it is dropped.
+ * Called on the evicting thread after the session was removed; explicit deletes are not evictions.
+ */
+public interface SessionEvictionListener {
+
+    void onEviction(ChatSession session, Reason reason);
+
+    enum Reason {
+        /** No activity for longer than the idle timeout */
+        IDLE,
+        /** Least recently active session dropped to stay within the memory budget */
+        SIZE,
+        /** Least recently active session dropped to stay within the session count limit */
+        COUNT
+    }
+}
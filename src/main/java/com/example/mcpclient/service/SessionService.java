@@ -1,23 +1,83 @@
 package com.example.mcpclient.service;
 
+import com.example.mcpclient.dto.SessionPage;
+import com.example.mcpclient.dto.SessionSummary;
 import com.example.mcpclient.model.ChatSession;
 import com.example.mcpclient.model.Message;
+import com.example.mcpclient.persistence.JournalEvent;
+import com.example.mcpclient.persistence.SessionJournal;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * In-memory session store, bounded in session count and estimated memory.
+ * A background sweep evicts sessions idle for longer than the idle timeout, then the least recently
+ * active ones while the sessions' estimated size exceeds the memory budget; creating a session beyond
+ * the count limit evicts the least recently active one right away. Evicted sessions are handed to the
+ * {@link SessionEvictionListener}s.
+ * <p>
+ * Every change is also recorded in the {@link SessionJournal}, which is snapshotted periodically and
+ * replayed on startup, so sessions survive restarts when a persistent journal is configured. Eviction only
+ * bounds memory: the journal keeps evicted sessions and they are restored on their next lookup.
+ */
+@Slf4j
 @Service
 public class SessionService {
 
+    // Listing order: newest first; creation time never changes, so cursors stay valid while sessions are active
+    private static final Comparator<ChatSession> LISTING_ORDER = Comparator
+            .comparing(ChatSession::getCreatedAt, Comparator.reverseOrder())
+            .thenComparing(ChatSession::getId);
+    private static final String CURSOR_SEPARATOR = "|";
+
     private final Map<String, ChatSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong(); // bumped on every change to any session
+    private final String epoch = Long.toString(ThreadLocalRandom.current().nextLong() >>> 1, 36); // new per boot
+    private final Duration idleTimeout;
+    private final long maxBytes;
+    private final int maxSessions;
+    private final ObjectProvider<SessionEvictionListener> evictionListeners;
+    private final SessionJournal journal;
+    private final MeterRegistry meterRegistry;
+
+    public SessionService(
+            @Value("${chat.sessions.idle-timeout:7200000}") long idleTimeout,
+            @Value("${chat.sessions.max-bytes:268435456}") long maxBytes,
+            @Value("${chat.sessions.max-sessions:10000}") int maxSessions,
+            ObjectProvider<SessionEvictionListener> evictionListeners,
+            SessionJournal journal,
+            MeterRegistry meterRegistry) {
+        this.idleTimeout = Duration.ofMillis(idleTimeout);
+        this.maxBytes = maxBytes;
+        this.maxSessions = maxSessions;
+        this.evictionListeners = evictionListeners;
+        this.journal = journal;
+        this.meterRegistry = meterRegistry;
+
+        journal.recover().forEach(session -> sessions.put(session.getId(), session));
+        Gauge.builder("chat.sessions.live", sessions, Map::size).register(meterRegistry);
+        Gauge.builder("chat.sessions.bytes", this, SessionService::estimatedBytes).register(meterRegistry);
+    }
 
     /**
      * Create a new chat session
      */
     public ChatSession createSession() {
         ChatSession session = new ChatSession();
-        sessions.put(session.getId(), session);
+        store(session);
         return session;
     }
 
@@ -26,7 +86,7 @@ public class SessionService {
      */
     public ChatSession createSession(String name) {
         ChatSession session = new ChatSession(name);
-        sessions.put(session.getId(), session);
+        store(session);
         return session;
     }
 
@@ -37,15 +97,19 @@ public class SessionService {
     public ChatSession createSessionWithId(String sessionId, String name) {
         ChatSession session = new ChatSession(name);
         session.setId(sessionId);
-        sessions.put(session.getId(), session);
+        store(session);
         return session;
     }
 
     /**
-     * Get a session by ID
+     * Get a session by ID, restoring it from the journal if it was evicted
      */
     public Optional<ChatSession> getSession(String sessionId) {
-        return Optional.ofNullable(sessions.get(sessionId));
+        ChatSession session = sessions.get(sessionId);
+        if (session != null || sessionId == null) {
+            return Optional.ofNullable(session);
+        }
+        return journal.restore(sessionId).map(this::restore);
     }
 
     /**
@@ -55,30 +119,96 @@ public class SessionService {
         return new ArrayList<>(sessions.values());
     }
 
+    /**
+     * Number of sessions in the store
+     */
+    public int countSessions() {
+        return sessions.size();
+    }
+
+    /**
+     * Changes whenever any session is created, changed or removed
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * The version qualified by a per-boot epoch, since the version itself starts over at 0 on every restart
+     */
+    public String getVersionTag() {
+        return epoch + "." + version.get();
+    }
+
+    /**
+     * Summaries of the sessions after the cursor (from the start if null), newest first.
+     * Only the page is materialized; messages are never copied.
+     *
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public SessionPage listSessions(String cursor, int limit) {
+        ChatSession after = cursor != null ? decodeCursor(cursor) : null;
+
+        List<ChatSession> page = sessions.values().stream()
+                .filter(session -> after == null || LISTING_ORDER.compare(session, after) > 0)
+                .sorted(LISTING_ORDER)
+                .limit(limit + 1L)
+                .toList();
+
+        boolean more = page.size() > limit;
+        List<ChatSession> shown = more ? page.subList(0, limit) : page;
+        List<SessionSummary> summaries = shown.stream().map(SessionSummary::of).toList();
+        String nextCursor = more ? encodeCursor(shown.get(shown.size() - 1)) : null;
+        return new SessionPage(summaries, nextCursor);
+    }
+
     /**
      * Add a message to a session
      */
     public void addMessage(String sessionId, Message message) {
-        ChatSession session = sessions.get(sessionId);
-        if (session != null) {
-            session.addMessage(message);
-        }
+        getSession(sessionId).ifPresent(session -> addMessage(session, message));
+    }
+
+    /**
+     * Add a message to a session the caller already holds
+     */
+    public void addMessage(ChatSession session, Message message) {
+        session.addMessage(message);
+        changed(JournalEvent.message(session.getId(), message));
+    }
+
+    /**
+     * Record thumbs up/down on a message of the session
+     */
+    public void recordFeedback(ChatSession session, Message message, Boolean liked) {
+        message.setLiked(liked);
+        session.markChanged();
+        changed(JournalEvent.feedback(session.getId(), message.getId(), liked));
     }
 
     /**
      * Delete a session
      */
     public boolean deleteSession(String sessionId) {
-        return sessions.remove(sessionId) != null;
+        // An evicted session is restored first so its stored copy is deleted too
+        Optional<ChatSession> session = getSession(sessionId);
+        if (session.isEmpty() || !sessions.remove(sessionId, session.get())) {
+            return false;
+        }
+        changed(JournalEvent.deleted(sessionId));
+        session.get().releaseArchive();
+        return true;
     }
 
     /**
      * Update session name
      */
     public boolean updateSessionName(String sessionId, String newName) {
-        ChatSession session = sessions.get(sessionId);
+        ChatSession session = getSession(sessionId).orElse(null);
         if (session != null) {
             session.setName(newName);
+            session.markChanged();
+            changed(JournalEvent.renamed(sessionId, newName));
             return true;
         }
         return false;
@@ -88,12 +218,145 @@ public class SessionService {
      * Clear all messages in a session
      */
     public boolean clearSession(String sessionId) {
-        ChatSession session = sessions.get(sessionId);
+        ChatSession session = getSession(sessionId).orElse(null);
         if (session != null) {
-            session.getMessages().clear();
-            session.updateLastActivity();
+            session.clearMessages();
+            changed(JournalEvent.cleared(sessionId));
             return true;
         }
         return false;
     }
-}
\ No newline at end of file
+
+    /**
+     * Evict idle sessions, then the least recently active ones until the estimated size fits the budget
+     */
+    @Scheduled(fixedDelayString = "${chat.sessions.sweep-interval:60000}",
+            initialDelayString = "${chat.sessions.sweep-interval:60000}")
+    public void sweep() {
+        LocalDateTime idleSince = LocalDateTime.now().minus(idleTimeout);
+        List<ChatSession> live = new ArrayList<>();
+        long bytes = 0;
+
+        for (ChatSession session : sessions.values()) {
+            if (session.getLastActivity().isBefore(idleSince)) {
+                evict(session, SessionEvictionListener.Reason.IDLE);
+            } else {
+                live.add(session);
+                bytes += session.getEstimatedBytes();
+            }
+        }
+
+        if (bytes > maxBytes) {
+            live.sort(Comparator.comparing(ChatSession::getLastActivity));
+            for (ChatSession session : live) {
+                if (bytes <= maxBytes) {
+                    break;
+                }
+                long sessionBytes = session.getEstimatedBytes();
+                if (evict(session, SessionEvictionListener.Reason.SIZE)) {
+                    bytes -= sessionBytes;
+                }
+            }
+        }
+
+        log.debug("Session sweep: {} sessions, ~{} bytes", sessions.size(), bytes);
+    }
+
+    /**
+     * Snapshot all sessions so the journal can drop the entries before it
+     */
+    @Scheduled(fixedDelayString = "${chat.persistence.snapshot-interval:600000}",
+            initialDelayString = "${chat.persistence.snapshot-interval:600000}")
+    public void snapshot() {
+        journal.snapshot(sessions.values());
+    }
+
+    private void store(ChatSession session) {
+        sessions.put(session.getId(), session);
+        changed(JournalEvent.created(session));
+        enforceCountLimit(session);
+    }
+
+    /**
+     * Bring an evicted session back; a concurrent lookup that restored it first wins
+     */
+    private ChatSession restore(ChatSession restored) {
+        ChatSession existing = sessions.putIfAbsent(restored.getId(), restored);
+        if (existing != null) {
+            return existing;
+        }
+        restored.updateLastActivity();
+        changed(JournalEvent.restored(restored.getId()));
+        log.info("Restored session {} from the journal ({} messages)", restored.getId(), restored.getMessageCount());
+        enforceCountLimit(restored);
+        return restored;
+    }
+
+    private void enforceCountLimit(ChatSession session) {
+        while (sessions.size() > maxSessions) {
+            Optional<ChatSession> oldest = sessions.values().stream()
+                    .filter(candidate -> candidate != session)
+                    .min(Comparator.comparing(ChatSession::getLastActivity));
+            if (oldest.isEmpty()) {
+                break;
+            }
+            evict(oldest.get(), SessionEvictionListener.Reason.COUNT);
+        }
+    }
+
+    private void changed(JournalEvent event) {
+        version.incrementAndGet();
+        journal.append(event);
+    }
+
+    private static String encodeCursor(ChatSession session) {
+        String position = session.getCreatedAt() + CURSOR_SEPARATOR + session.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The listing position of a cursor, as a session holding just the fields the order compares
+     */
+    private static ChatSession decodeCursor(String cursor) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = position.indexOf(CURSOR_SEPARATOR);
+            ChatSession key = new ChatSession();
+            key.setCreatedAt(LocalDateTime.parse(position.substring(0, separator)));
+            key.setId(position.substring(separator + 1));
+            return key;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    private boolean evict(ChatSession session, SessionEvictionListener.Reason reason) {
+        if (!sessions.remove(session.getId(), session)) {
+            return false;
+        }
+        version.incrementAndGet();
+        journal.evict(session);
+
+        meterRegistry.counter("chat.sessions.evictions", "reason", reason.name().toLowerCase(Locale.ROOT)).increment();
+        log.info("Evicted session {} ({}, {} messages, ~{} bytes)", session.getId(), reason,
+                session.getMessages().size(), session.getEstimatedBytes());
+
+        evictionListeners.orderedStream().forEach(listener -> {
+            try {
+                listener.onEviction(session, reason);
+            } catch (Exception e) {
+                log.warn("Session eviction listener failed for session {}", session.getId(), e);
+            }
+        });
+        session.releaseArchive();
+        return true;
+    }
+
+    private double estimatedBytes() {
+        long bytes = 0;
+        for (ChatSession session : sessions.values()) {
+            bytes += session.getEstimatedBytes();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.mcpclient.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs the turns of one session one after another.
+ * Each session has a mailbox: a turn starts when the previous one has finished (completed, failed or been
+ * cancelled), so it always sees the complete history of the turns before it, while different sessions run
+ * fully in parallel. A mailbox holds a bounded number of pending turns; a new turn can also replace the
+ * pending ones instead of queueing behind them. Mailboxes only exist while they have turns.
+ */
+@Slf4j
+@Component
+public class SessionTurnScheduler {
+
+    private final int maxPending;
+    private final Map<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingTurns = new AtomicInteger();
+
+    private final Timer waitTime;
+    private final Counter rejected;
+    private final Counter replaced;
+
+    public SessionTurnScheduler(
+            @Value("${chat.turns.max-pending:3}") int maxPending,
+            MeterRegistry meterRegistry) {
+        this.maxPending = maxPending;
+        this.waitTime = Timer.builder("chat.turns.wait").register(meterRegistry);
+        this.rejected = Counter.builder("chat.turns.rejected").register(meterRegistry);
+        this.replaced = Counter.builder("chat.turns.replaced").register(meterRegistry);
+        Gauge.builder("chat.turns.pending", pendingTurns, AtomicInteger::get).register(meterRegistry);
+        Gauge.builder("chat.turns.sessions", mailboxes, Map::size).register(meterRegistry);
+    }
+
+    /**
+     * Run the turn once every earlier turn of the session has finished.
+     * With replacePending the turns still waiting fail with {@link TurnReplacedException} and this one takes
+     * their place; otherwise it fails with {@link SessionBusyException} when the mailbox is full.
+     */
+    public <T> Flux<T> schedule(String sessionId, boolean replacePending, Supplier<Flux<T>> work) {
+        return Flux.defer(() -> {
+            Turn turn = new Turn();
+            Mailbox mailbox;
+            List<Turn> dropped;
+            boolean startNow;
+
+            while (true) {
+                mailbox = mailboxes.computeIfAbsent(sessionId, Mailbox::new);
+                synchronized (mailbox) {
+                    if (mailbox.retired) {
+                        continue;
+                    }
+                    if (replacePending) {
+                        dropped = new ArrayList<>(mailbox.pending);
+                        mailbox.pending.clear();
+                        pendingTurns.addAndGet(-dropped.size());
+                    } else if (mailbox.pending.size() >= maxPending) {
+                        rejected.increment();
+                        log.info("Rejecting turn for session {}: {} turns already waiting", sessionId, mailbox.pending.size());
+                        return Flux.error(new SessionBusyException("Please wait for the previous answers to finish"));
+                    } else {
+                        dropped = Collections.emptyList();
+                    }
+
+                    startNow = mailbox.running == null;
+                    if (startNow) {
+                        mailbox.running = turn;
+                    } else {
+                        mailbox.pending.add(turn);
+                        pendingTurns.incrementAndGet();
+                    }
+                    break;
+                }
+            }
+
+            if (!dropped.isEmpty()) {
+                replaced.increment(dropped.size());
+                log.info("Replacing {} pending turns of session {}", dropped.size(), sessionId);
+                dropped.forEach(pending -> pending.start.tryEmitError(new TurnReplacedException("Replaced by a newer message")));
+            }
+            if (startNow) {
+                turn.start.tryEmitValue(Boolean.TRUE);
+            }
+
+            Mailbox owner = mailbox;
+            long queuedAt = System.nanoTime();
+            return turn.start.asMono()
+                    .flatMapMany(started -> {
+                        waitTime.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+                        return Flux.defer(work);
+                    })
+                    .doFinally(signal -> finish(owner, turn));
+        });
+    }
+
+    /**
+     * The turn has terminated or was cancelled: drop it from the queue, or start the next one if it was running
+     */
+    private void finish(Mailbox mailbox, Turn turn) {
+        Turn next = null;
+        synchronized (mailbox) {
+            if (mailbox.running != turn) {
+                if (mailbox.pending.remove(turn)) {
+                    pendingTurns.decrementAndGet();
+                }
+                return;
+            }
+
+            next = mailbox.pending.poll();
+            mailbox.running = next;
+            if (next != null) {
+                pendingTurns.decrementAndGet();
+            } else {
+                mailbox.retired = true;
+                mailboxes.remove(mailbox.sessionId, mailbox);
+            }
+        }
+
+        if (next != null) {
+            next.start.tryEmitValue(Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Turns of one session; all state changes happen under the instance lock
+     */
+    private static class Mailbox {
+        final String sessionId;
+        final ArrayDeque<Turn> pending = new ArrayDeque<>();
+        Turn running;
+        boolean retired;
+
+        Mailbox(String sessionId) {
+            this.sessionId = sessionId;
+        }
+    }
+
+    private static class Turn {
+        final Sinks.One<Boolean> start = Sinks.one();
+    }
+
+    /**
+     * Too many turns of the session are already waiting
+     */
+    public static class SessionBusyException extends RuntimeException {
+        public SessionBusyException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The pending turn was replaced by a newer one before it started
+     */
+    public static class TurnReplacedException extends RuntimeException {
+        public TurnReplacedException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.mcpclient.service;
+
+import org.springframework.http.codec.ServerSentEvent;
+
+/**
+ * Builds the chat stream's server-sent events; the WebSocket transport wraps the same payloads in its frames.
+ * Payloads are written into a per-thread buffer from constant JSON fragments, and string values are
+ * escaped in a single pass that copies unescaped runs in bulk. Every character that JSON requires to be
+ * escaped is handled (quotes, backslash, all control characters), plus U+2028/U+2029 for JavaScript.
+ */
+public final class SseEventEncoder {
+
+    public static final String USER_MESSAGE = "userMessage";
+    public static final String START = "start";
+    public static final String CHUNK = "chunk";
+    public static final String DONE = "done";
+    public static final String ERROR = "error";
+    public static final String BUSY = "busy";
+
+    private static final String ID_PREFIX = "{\"id\": \"";
+    private static final String MESSAGE_ID_PREFIX = "{\"messageId\": \"";
+    private static final String CONTENT_PREFIX = "{\"content\": \"";
+    private static final String ERROR_PREFIX = "{\"error\": \"";
+    private static final String RETRY_AFTER_INFIX = "\", \"retryAfter\": ";
+    private static final String STRING_END = "\"}";
+    private static final char OBJECT_END = '}';
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int MAX_RETAINED_CAPACITY = 16 * 1024;
+    private static final ThreadLocal<StringBuilder> BUFFER =
+            ThreadLocal.withInitial(() -> new StringBuilder(INITIAL_CAPACITY));
+
+    private SseEventEncoder() {
+    }
+
+    public static ServerSentEvent<String> userMessage(String id) {
+        return event(USER_MESSAGE, stringObject(ID_PREFIX, id));
+    }
+
+    public static ServerSentEvent<String> start(String messageId) {
+        return event(START, stringObject(MESSAGE_ID_PREFIX, messageId));
+    }
+
+    public static ServerSentEvent<String> chunk(String content) {
+        return event(CHUNK, stringObject(CONTENT_PREFIX, content));
+    }
+
+    public static ServerSentEvent<String> done(String messageId) {
+        return event(DONE, stringObject(MESSAGE_ID_PREFIX, messageId));
+    }
+
+    public static ServerSentEvent<String> error(String message) {
+        return event(ERROR, stringObject(ERROR_PREFIX, message));
+    }
+
+    public static ServerSentEvent<String> busy(String message, long retryAfterSeconds) {
+        StringBuilder sb = buffer();
+        sb.append(ERROR_PREFIX);
+        escape(message, sb);
+        sb.append(RETRY_AFTER_INFIX).append(retryAfterSeconds).append(OBJECT_END);
+        return event(BUSY, sb.toString());
+    }
+
+    private static ServerSentEvent<String> event(String name, String data) {
+        return ServerSentEvent.<String>builder()
+                .event(name)
+                .data(data)
+                .build();
+    }
+
+    /**
+     * A one-field JSON object: prefix (opening brace, key and opening quote), escaped value, closing quote and brace
+     */
+    public static String stringObject(String prefix, String value) {
+        StringBuilder sb = buffer();
+        sb.append(prefix);
+        escape(value, sb);
+        sb.append(STRING_END);
+        return sb.toString();
+    }
+
+    /**
+     * Append the JSON string escape of the value (without quotes); null is written as an empty string
+     */
+    public static void escape(String value, StringBuilder out) {
+        if (value == null) {
+            return;
+        }
+
+        int length = value.length();
+        int runStart = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\' && c != 0x2028 && c != 0x2029) {
+                continue;
+            }
+
+            out.append(value, runStart, i);
+            runStart = i + 1;
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                case '\b' -> out.append("\\b");
+                case '\f' -> out.append("\\f");
+                default -> out.append("\\u")
+                        .append(HEX[(c >> 12) & 0xF])
+                        .append(HEX[(c >> 8) & 0xF])
+                        .append(HEX[(c >> 4) & 0xF])
+                        .append(HEX[c & 0xF]);
+            }
+        }
+        out.append(value, runStart, length);
+    }
+
+    /**
+     * The calling thread's buffer, emptied; replaced if a huge payload left it oversized
+     */
+    private static StringBuilder buffer() {
+        StringBuilder sb = BUFFER.get();
+        if (sb.capacity() > MAX_RETAINED_CAPACITY) {
+            sb = new StringBuilder(INITIAL_CAPACITY);
+            BUFFER.set(sb);
+        }
+        sb.setLength(0);
+        return sb;
+    }
+}
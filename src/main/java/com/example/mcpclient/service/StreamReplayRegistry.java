@@ -0,0 +1,153 @@
+package com.example.mcpclient.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.ConnectableFlux;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Makes assistant streams resumable.
+ * Each stream is generated independently of its HTTP connection: its events get sequence ids and the most
+ * recent ones are kept in a bounded replay buffer, so a client that lost its connection can reconnect with
+ * Last-Event-ID and continue where it stopped. Generation is cancelled when no client has been attached
+ * for the grace period, and the buffer is dropped once the stream has finished and the retention period
+ * has passed.
+ */
+@Slf4j
+@Component
+public class StreamReplayRegistry {
+
+    private final int bufferSize;
+    private final Duration gracePeriod;
+    private final Duration retention;
+    private final Scheduler scheduler = Schedulers.parallel();
+    private final Map<String, ReplayableStream> streams = new ConcurrentHashMap<>();
+
+    private final Counter resumes;
+    private final Counter abandoned;
+
+    public StreamReplayRegistry(
+            @Value("${chat.replay.buffer-size:1024}") int bufferSize,
+            @Value("${chat.replay.grace-period:30000}") long gracePeriod,
+            @Value("${chat.replay.retention:60000}") long retention,
+            MeterRegistry meterRegistry) {
+        this.bufferSize = bufferSize;
+        this.gracePeriod = Duration.ofMillis(gracePeriod);
+        this.retention = Duration.ofMillis(retention);
+        this.resumes = Counter.builder("chat.stream.resumes").register(meterRegistry);
+        this.abandoned = Counter.builder("chat.stream.abandoned").register(meterRegistry);
+        Gauge.builder("chat.stream.buffered", streams, Map::size).register(meterRegistry);
+    }
+
+    /**
+     * Start generating the events in the background and return the first client's view of them
+     */
+    public Flux<ServerSentEvent<String>> start(String messageId, Flux<ServerSentEvent<String>> events) {
+        ReplayableStream stream = new ReplayableStream(messageId, events);
+        streams.put(messageId, stream);
+        stream.connect();
+        return stream.view(0);
+    }
+
+    /**
+     * The events after lastEventId, followed by the live rest of the stream; empty if the stream is unknown
+     * or already evicted. The view fails if events after lastEventId have already left the buffer.
+     */
+    public Optional<Flux<ServerSentEvent<String>>> resume(String messageId, long lastEventId) {
+        ReplayableStream stream = streams.get(messageId);
+        if (stream == null) {
+            return Optional.empty();
+        }
+
+        resumes.increment();
+        log.info("Resuming stream {} after event {}", messageId, lastEventId);
+        return Optional.of(stream.view(lastEventId));
+    }
+
+    /**
+     * One generation, its replay buffer and the clients attached to it
+     */
+    private class ReplayableStream {
+        final String messageId;
+        final AtomicLong sequence = new AtomicLong();
+        final AtomicInteger subscribers = new AtomicInteger();
+        final ConnectableFlux<ServerSentEvent<String>> replay;
+        volatile long lastDetachNanos;
+        volatile boolean finished;
+        Disposable connection;
+
+        ReplayableStream(String messageId, Flux<ServerSentEvent<String>> events) {
+            this.messageId = messageId;
+            this.replay = events
+                    .map(event -> ServerSentEvent.builder(event.data())
+                            .event(event.event())
+                            .id(String.valueOf(sequence.incrementAndGet()))
+                            .build())
+                    .doFinally(signal -> {
+                        finished = true;
+                        scheduler.schedule(this::evict, retention.toMillis(), TimeUnit.MILLISECONDS);
+                    })
+                    .replay(bufferSize);
+        }
+
+        void connect() {
+            connection = replay.connect();
+        }
+
+        Flux<ServerSentEvent<String>> view(long lastEventId) {
+            return Flux.defer(() -> {
+                long oldestBuffered = Math.max(1, sequence.get() - bufferSize + 1);
+                if (lastEventId + 1 < oldestBuffered) {
+                    return Flux.<ServerSentEvent<String>>error(
+                            new IllegalStateException("This answer can no longer be resumed"));
+                }
+                return replay.filter(event -> Long.parseLong(event.id()) > lastEventId)
+                        .doOnSubscribe(subscription -> subscribers.incrementAndGet())
+                        .doFinally(signal -> detach());
+            });
+        }
+
+        /**
+         * A client went away; cancel the generation if nobody reattaches within the grace period
+         */
+        private void detach() {
+            if (subscribers.decrementAndGet() > 0 || finished) {
+                return;
+            }
+            lastDetachNanos = System.nanoTime();
+            scheduler.schedule(() -> {
+                boolean idle = subscribers.get() == 0
+                        && System.nanoTime() - lastDetachNanos >= gracePeriod.toNanos();
+                if (idle && !finished) {
+                    log.info("No client reattached to stream {} within {} ms, cancelling generation",
+                            messageId, gracePeriod.toMillis());
+                    abandoned.increment();
+                    connection.dispose();
+                    streams.remove(messageId, this);
+                }
+            }, gracePeriod.toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        private void evict() {
+            if (streams.remove(messageId, this)) {
+                log.debug("Evicted replay buffer for stream {}", messageId);
+            }
+        }
+    }
+}
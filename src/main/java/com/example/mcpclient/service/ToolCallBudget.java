@@ -0,0 +1,78 @@
+package com.example.mcpclient.service;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-turn limit on tool calls: a maximum number of calls and a wall-clock deadline.
+ * Also tracks the calls still in flight so a cancelled turn can abandon them.
+ */
+public class ToolCallBudget {
+
+    private final int maxCalls;
+    private final long deadlineNanos;
+    private final AtomicInteger used = new AtomicInteger();
+    private final Set<Future<?>> inFlight = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+
+    public ToolCallBudget(int maxCalls, Duration timeBudget) {
+        this.maxCalls = maxCalls;
+        this.deadlineNanos = System.nanoTime() + timeBudget.toNanos();
+    }
+
+    /**
+     * Reserve one tool call; false once the call count or the time budget is exhausted
+     */
+    public boolean tryAcquire() {
+        if (cancelled || isExpired()) {
+            return false;
+        }
+        return used.incrementAndGet() <= maxCalls;
+    }
+
+    public boolean isExpired() {
+        return System.nanoTime() - deadlineNanos > 0;
+    }
+
+    /**
+     * Time left before the deadline, zero once it has passed
+     */
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()));
+    }
+
+    public int getUsed() {
+        return Math.min(used.get(), maxCalls);
+    }
+
+    /**
+     * Track a running call; false (and the call is cancelled) if the turn was already cancelled
+     */
+    public boolean register(Future<?> call) {
+        inFlight.add(call);
+        if (cancelled) {
+            inFlight.remove(call);
+            call.cancel(true);
+            return false;
+        }
+        return true;
+    }
+
+    public void unregister(Future<?> call) {
+        inFlight.remove(call);
+    }
+
+    /**
+     * Cancel the calls in flight and refuse further ones, e.g. when the client disconnects
+     */
+    public void cancel() {
+        cancelled = true;
+        for (Future<?> call : inFlight) {
+            call.cancel(true);
+        }
+        inFlight.clear();
+    }
+}
@@ -0,0 +1,247 @@
+package com.example.mcpclient.service;
+
+import com.example.mcpclient.model.McpTool;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Opt-in cache for MCP tool results.
+ * Entries are keyed by scope (session or JWT), tool name and canonicalized arguments, so results for one
+ * user are never served to another. Only tools with a configured TTL are cached; the cache is bounded by
+ * the estimated size of its entries and evicts with Caffeine's W-TinyLFU policy.
+ */
+@Slf4j
+@Component
+public class ToolResultCache {
+
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+
+    private final boolean enabled;
+    private final Map<String, Duration> ttls;
+    private final Cache<String, CachedResult> cache;
+    private final ObjectMapper canonicalMapper;
+    private volatile Map<String, Object> inputSchemas = Collections.emptyMap(); // by tool name
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public ToolResultCache(
+            @Value("${mcp.result-cache.enabled:false}") boolean enabled,
+            @Value("${mcp.result-cache.max-bytes:16777216}") long maxBytes,
+            Environment environment,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.ttls = Binder.get(environment)
+                .bind("mcp.result-cache.ttl", Bindable.mapOf(String.class, Duration.class))
+                .orElse(Collections.emptyMap());
+        this.canonicalMapper = objectMapper.copy().configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+        this.hits = Counter.builder("mcp.tool.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("mcp.tool.cache.requests").tag("result", "miss").register(meterRegistry);
+        this.evictions = Counter.builder("mcp.tool.cache.evictions").register(meterRegistry);
+
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, CachedResult value) -> value.weight)
+                .expireAfter(new Expiry<String, CachedResult>() {
+                    @Override
+                    public long expireAfterCreate(String key, CachedResult value, long currentTime) {
+                        return value.ttl.toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, CachedResult value, long currentTime, long currentDuration) {
+                        return value.ttl.toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, CachedResult value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .removalListener((String key, CachedResult value, RemovalCause cause) -> {
+                    if (cause.wasEvicted()) {
+                        evictions.increment();
+                    }
+                })
+                .build();
+
+        Gauge.builder("mcp.tool.cache.entries", cache, c -> c.estimatedSize()).register(meterRegistry);
+        Gauge.builder("mcp.tool.cache.bytes", cache, c -> (double) c.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L)).register(meterRegistry);
+
+        if (enabled) {
+            log.info("Tool result cache enabled for {} tools, max {} bytes", ttls.size(), maxBytes);
+        }
+    }
+
+    /**
+     * Take the input schemas of the current tool catalog; they decide which arguments are numeric
+     */
+    public void updateSchemas(List<McpTool> tools) {
+        Map<String, Object> schemas = new HashMap<>();
+        for (McpTool tool : tools) {
+            if (tool.getName() != null && tool.getInputSchema() != null) {
+                schemas.put(tool.getName(), tool.getInputSchema());
+            }
+        }
+        this.inputSchemas = schemas;
+    }
+
+    /**
+     * Whether results of this tool may be cached
+     */
+    public boolean isCacheable(String toolName) {
+        return enabled && toolName != null && ttls.containsKey(toolName);
+    }
+
+    /**
+     * Look up a cached result
+     */
+    public Optional<String> get(String scope, String toolName, Map<String, Object> arguments) {
+        if (scope == null || !isCacheable(toolName)) {
+            return Optional.empty();
+        }
+
+        CachedResult cached = cache.getIfPresent(key(scope, toolName, arguments));
+        if (cached == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+
+        hits.increment();
+        log.debug("Tool result cache hit for {}", toolName);
+        return Optional.of(cached.content);
+    }
+
+    /**
+     * Store a result, skipping errors
+     */
+    public void put(String scope, String toolName, Map<String, Object> arguments, String result) {
+        if (scope == null || result == null || result.startsWith("Error:") || !isCacheable(toolName)) {
+            return;
+        }
+
+        String key = key(scope, toolName, arguments);
+        int weight = ENTRY_OVERHEAD_BYTES + 2 * (key.length() + result.length());
+        cache.put(key, new CachedResult(result, weight, ttls.get(toolName)));
+    }
+
+    /**
+     * Drop every entry belonging to a scope
+     */
+    public void invalidateScope(String scope) {
+        String prefix = scope + "|";
+        cache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    /**
+     * Cache scope for a request: the JWT when present, otherwise the chat session
+     */
+    public static String scopeFor(String sessionId, String token) {
+        if (token != null && !token.isEmpty()) {
+            return "jwt:" + sha256(token);
+        }
+        return "session:" + sessionId;
+    }
+
+    private String key(String scope, String toolName, Map<String, Object> arguments) {
+        Object canonical = canonicalize(arguments, inputSchemas.get(toolName));
+        try {
+            return scope + "|" + toolName + "|" + canonicalMapper.writeValueAsString(canonical);
+        } catch (Exception e) {
+            return scope + "|" + toolName + "|" + canonical;
+        }
+    }
+
+    /**
+     * Sort map keys and normalize the numbers the schema declares numeric, so 42 and 42.0 share a key.
+     * Strings are kept exactly as sent: "042" and "42 " may well be different identifiers to the tool.
+     */
+    private Object canonicalize(Object value, Object schema) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Map) {
+            Map<?, ?> properties = schemaMap(schemaMap(schema).get("properties"));
+            Map<String, Object> sorted = new TreeMap<>();
+            ((Map<?, ?>) value).forEach((k, v) -> {
+                if (v != null) {
+                    sorted.put(String.valueOf(k), canonicalize(v, properties.get(k)));
+                }
+            });
+            return sorted;
+        }
+        if (value instanceof Collection) {
+            Object items = schemaMap(schema).get("items");
+            List<Object> list = new ArrayList<>();
+            for (Object item : (Collection<?>) value) {
+                list.add(canonicalize(item, items));
+            }
+            return list;
+        }
+        if (value instanceof Number && isNumeric(schema)) {
+            return new BigDecimal(value.toString()).stripTrailingZeros();
+        }
+        return value;
+    }
+
+    /**
+     * Whether a schema declares a number or integer type, alone or in a type list
+     */
+    private static boolean isNumeric(Object schema) {
+        Object type = schemaMap(schema).get("type");
+        if (type instanceof Collection) {
+            return ((Collection<?>) type).contains("number") || ((Collection<?>) type).contains("integer");
+        }
+        return "number".equals(type) || "integer".equals(type);
+    }
+
+    private static Map<?, ?> schemaMap(Object schema) {
+        return schema instanceof Map ? (Map<?, ?>) schema : Collections.emptyMap();
+    }
+
+    private static String sha256(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class CachedResult {
+        final String content;
+        final int weight;
+        final Duration ttl;
+
+        CachedResult(String content, int weight, Duration ttl) {
+            this.content = content;
+            this.weight = weight;
+            this.ttl = ttl;
+        }
+    }
+}
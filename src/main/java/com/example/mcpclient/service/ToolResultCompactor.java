@@ -0,0 +1,284 @@
+package com.example.mcpclient.service;
+
+import com.example.mcpclient.model.ResultCursor;
+import com.example.mcpclient.model.ToolResult;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Shrinks tool results before they are pasted into the prompt.
+ * JSON results are projected to the fields that match the question (plus identifying fields), long strings
+ * are cut, and arrays are paged; the first paged array gets a cursor so "show more" can serve the next page
+ * from the stored result instead of calling the tool again. Anything else is truncated to a size limit.
+ */
+@Slf4j
+@Component
+public class ToolResultCompactor {
+
+    private static final Pattern SHOW_MORE = Pattern.compile(
+            "^(?:please\\s+)?(?:(?:show|give|list|see|load|display|get)\\s+(?:me\\s+)?)?(?:some\\s+|the\\s+)?"
+                    + "(?:more|next|rest|remaining)(?:\\s+[a-z]+){0,2}\\s*[.!?]*$",
+            Pattern.CASE_INSENSITIVE);
+
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final int maxChars;
+    private final int pageSize;
+    private final int maxStringChars;
+
+    public ToolResultCompactor(
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${chat.compaction.enabled:true}") boolean enabled,
+            @Value("${chat.compaction.max-chars:4000}") int maxChars,
+            @Value("${chat.compaction.page-size:10}") int pageSize,
+            @Value("${chat.compaction.max-string-chars:500}") int maxStringChars) {
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.maxChars = maxChars;
+        this.pageSize = pageSize;
+        this.maxStringChars = maxStringChars;
+    }
+
+    /**
+     * Whether the message only asks for more of the previous result
+     */
+    public static boolean isShowMore(String message) {
+        return message != null && SHOW_MORE.matcher(message.trim()).matches();
+    }
+
+    /**
+     * Compact the results of one turn for the given question
+     */
+    public CompactedResults compact(String question, List<ToolResult> results) {
+        List<ToolResult> compacted = new ArrayList<>();
+        ResultCursor cursor = null;
+
+        for (ToolResult result : results) {
+            if (!enabled || result.getContent() == null) {
+                compacted.add(result);
+                continue;
+            }
+
+            Projection projection = new Projection(question);
+            String content = compactContent(result.getContent(), projection);
+            if (cursor == null && projection.pagedPointer != null) {
+                cursor = new ResultCursor(result, question, projection.pagedPointer, pageSize, projection.pagedTotal);
+            }
+
+            record(result, content);
+            compacted.add(new ToolResult(result.getCall(), content));
+        }
+
+        return new CompactedResults(compacted, cursor);
+    }
+
+    /**
+     * The page after the cursor, projected for the original question; the returned cursor is null on the last page
+     */
+    public CompactedResults nextPage(ResultCursor cursor) {
+        ToolResult result = cursor.getResult();
+        JsonNode root = parse(result.getContent());
+        JsonNode array = root != null ? root.at(cursor.getArrayPointer()) : null;
+        if (array == null || !array.isArray() || cursor.getOffset() >= array.size()) {
+            return new CompactedResults(Collections.emptyList(), null);
+        }
+
+        Projection projection = new Projection(cursor.getQuestion());
+        projection.pagedPointer = cursor.getArrayPointer();
+
+        int end = Math.min(cursor.getOffset() + pageSize, array.size());
+        ArrayNode items = objectMapper.createArrayNode();
+        for (int i = cursor.getOffset(); i < end; i++) {
+            items.add(project(array.get(i), cursor.getArrayPointer() + "/" + i, projection));
+        }
+
+        ResultCursor next = end < array.size()
+                ? new ResultCursor(result, cursor.getQuestion(), cursor.getArrayPointer(), end, array.size())
+                : null;
+
+        ObjectNode page = objectMapper.createObjectNode();
+        page.set("items", items);
+        page.put("shown", (cursor.getOffset() + 1) + "-" + end + " of " + array.size());
+        if (next != null) {
+            page.put("more", "The user can ask to show more");
+        }
+
+        String content = truncate(write(page));
+        record(result, content);
+        return new CompactedResults(List.of(new ToolResult(result.getCall(), content)), next);
+    }
+
+    private String compactContent(String content, Projection projection) {
+        JsonNode root = parse(content);
+        if (root == null || !root.isContainerNode()) {
+            return truncate(content);
+        }
+        return truncate(write(project(root, "", projection)));
+    }
+
+    private JsonNode project(JsonNode node, String pointer, Projection projection) {
+        if (node.isObject()) {
+            return projectObject(node, pointer, projection);
+        }
+        if (node.isArray()) {
+            return projectArray(node, pointer, projection);
+        }
+        if (node.isTextual() && node.textValue().length() > maxStringChars) {
+            return TextNode.valueOf(node.textValue().substring(0, maxStringChars) + "...");
+        }
+        return node;
+    }
+
+    /**
+     * Keep the fields named in the question plus identifying fields; keep everything if nothing matches
+     */
+    private JsonNode projectObject(JsonNode node, String pointer, Projection projection) {
+        Set<String> matching = new HashSet<>();
+        Iterator<String> names = node.fieldNames();
+        while (names.hasNext()) {
+            String name = names.next();
+            if (projection.isRelevant(name)) {
+                matching.add(name);
+            }
+        }
+
+        ObjectNode projected = objectMapper.createObjectNode();
+        List<String> omitted = new ArrayList<>();
+        Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            String name = field.getKey();
+            if (matching.isEmpty() || matching.contains(name) || isIdentity(name)) {
+                String childPointer = pointer + "/" + name.replace("~", "~0").replace("/", "~1");
+                projected.set(name, project(field.getValue(), childPointer, projection));
+            } else {
+                omitted.add(name);
+            }
+        }
+
+        if (!omitted.isEmpty()) {
+            projected.put("_omitted", String.join(", ", omitted));
+        }
+        return projected;
+    }
+
+    /**
+     * Keep the first page of a large array; the first array paged in a result becomes the cursor
+     */
+    private JsonNode projectArray(JsonNode node, String pointer, Projection projection) {
+        int shown = Math.min(node.size(), pageSize);
+        ArrayNode items = objectMapper.createArrayNode();
+        for (int i = 0; i < shown; i++) {
+            items.add(project(node.get(i), pointer + "/" + i, projection));
+        }
+        if (node.size() <= pageSize) {
+            return items;
+        }
+
+        if (projection.pagedPointer == null) {
+            projection.pagedPointer = pointer;
+            projection.pagedTotal = node.size();
+        }
+
+        ObjectNode page = objectMapper.createObjectNode();
+        page.set("items", items);
+        page.put("shown", "1-" + shown + " of " + node.size());
+        page.put("more", pointer.equals(projection.pagedPointer)
+                ? "The user can ask to show more"
+                : (node.size() - shown) + " more not shown");
+        return page;
+    }
+
+    private static boolean isIdentity(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        return lower.equals("id") || lower.endsWith("_id") || name.endsWith("Id")
+                || lower.contains("name") || lower.equals("title");
+    }
+
+    private JsonNode parse(String content) {
+        String trimmed = content.trim();
+        if (!trimmed.startsWith("{") && !trimmed.startsWith("[")) {
+            return null;
+        }
+        try {
+            return objectMapper.readTree(trimmed);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private String write(JsonNode node) {
+        try {
+            return objectMapper.writeValueAsString(node);
+        } catch (Exception e) {
+            return node.toString();
+        }
+    }
+
+    private String truncate(String text) {
+        if (text.length() <= maxChars) {
+            return text;
+        }
+        return text.substring(0, maxChars) + "\n... (" + (text.length() - maxChars) + " more characters truncated)";
+    }
+
+    private void record(ToolResult result, String compacted) {
+        String tool = result.getCall().getToolName();
+        int raw = result.getContent().length();
+
+        meterRegistry.summary("chat.tool.result.chars", "tool", tool, "stage", "raw").record(raw);
+        meterRegistry.summary("chat.tool.result.chars", "tool", tool, "stage", "compacted").record(compacted.length());
+        if (raw > 0) {
+            meterRegistry.summary("chat.tool.result.compaction.ratio", "tool", tool).record((double) compacted.length() / raw);
+        }
+
+        log.debug("Compacted {} result from {} to {} chars", tool, raw, compacted.length());
+    }
+
+    /**
+     * Compacted results of one turn and the cursor for the next page, if any
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class CompactedResults {
+        private final List<ToolResult> results;
+        private final ResultCursor cursor;
+    }
+
+    /**
+     * Question terms and the array chosen for paging while one result is projected
+     */
+    private static class Projection {
+        final Set<String> terms;
+        String pagedPointer;
+        int pagedTotal;
+
+        Projection(String question) {
+            this.terms = new HashSet<>(KeywordToolRouter.terms(question));
+        }
+
+        boolean isRelevant(String fieldName) {
+            for (String term : KeywordToolRouter.terms(fieldName)) {
+                if (terms.contains(term)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.mcpclient.service;
+
+import com.example.mcpclient.model.ToolCatalog;
+import com.example.mcpclient.model.ToolRoute;
+
+import java.util.Optional;
+
+/**
+ * Fast-path tool selection that runs before the LLM tool decision.
+ * Implementations return a route with their confidence, or empty when they cannot tell;
+ * the caller falls back to the LLM when the confidence is below its threshold.
+ */
+public interface ToolRouter {
+
+    Optional<ToolRoute> route(String userMessage, ToolCatalog catalog);
+}
@@ -23,6 +23,15 @@ const mainContent = document.querySelector('.main-content');
 // Tools state
 let tools = [];
 
+// Resuming interrupted answer streams
+const MAX_RESUME_ATTEMPTS = 5;
+const RESUME_DELAY_MS = 1000;
+
+// Chat over a shared WebSocket, falling back to one HTTP stream per message
+const USE_WEBSOCKET = true;
+const SOCKET_EVENTS = { u: 'userMessage', s: 'start', c: 'chunk', d: 'done', e: 'error', b: 'busy' };
+let chatSocketPromise = null;
+
 // Speech Recognition Setup
 let recognition = null;
 let isListening = false;
@@ -149,12 +158,12 @@ function setupEventListeners() {
     sidebarToggleBtn.addEventListener('click', toggleSidebar);
 
     if (refreshToolsBtn) {
-        refreshToolsBtn.addEventListener('click', loadTools);
+        refreshToolsBtn.addEventListener('click', () => loadTools(true));
     }
 }
 
 // Load MCP tools
-async function loadTools() {
+async function loadTools(refresh = false) {
     console.log('Loading MCP tools...');
 
     if (toolsList) {
@@ -162,7 +171,7 @@ async function loadTools() {
     }
 
     try {
-        const response = await fetch('/api/tools');
+        const response = await fetch(refresh ? '/api/tools?refresh=true' : '/api/tools');
 
         if (!response.ok) {
             throw new Error(`HTTP error! status: ${response.status}`);
@@ -454,66 +463,68 @@ async function sendMessage() {
     let assistantContent = '';
 
     try {
-        const response = await fetch('/api/chat', {
-            method: 'POST',
-            headers: {
-                'Content-Type': 'application/json',
-                'Accept': 'text/event-stream'
-            },
-            body: JSON.stringify({
-                sessionId: currentSessionId,
-                message: messageText
-            })
-        });
-
-        if (!response.ok) {
-            throw new Error(`HTTP error! status: ${response.status}`);
-        }
-
-        const reader = response.body.getReader();
-        const decoder = new TextDecoder();
-        let buffer = '';
-
-        while (true) {
-            const { done, value } = await reader.read();
-
-            if (done) {
-                break;
+        const stream = { messageId: null, lastEventId: null, finished: false };
+        const onEvent = (name, event) => {
+            if (name === 'start') {
+                stream.messageId = event.messageId;
+            } else if (name === 'done' || name === 'error' || name === 'busy') {
+                stream.finished = true;
             }
 
-            buffer += decoder.decode(value, { stream: true });
-            const lines = buffer.split('\n');
-            buffer = lines.pop() || '';
-
-            for (const line of lines) {
-                if (line.startsWith('data:')) {
-                    const data = line.substring(5).trim();
-
-                    if (data) {
-                        try {
-                            const event = JSON.parse(data);
-
-                            if (event.content) {
-                                assistantContent += event.content;
-                                updateMessageContent(assistantMessageId, assistantContent);
-
-                                // Update session
-                                if (session) {
-                                    const msg = session.messages.find(m => m.id === assistantMessageId);
-                                    if (msg) {
-                                        msg.content = assistantContent;
-                                        saveSessionsToStorage();
-                                    }
-                                }
-                            } else if (event.error) {
-                                showError(event.error);
-                            }
-                        } catch (e) {
-                            console.error('Error parsing SSE data:', e, data);
-                        }
+            if (event.content) {
+                assistantContent += event.content;
+                updateMessageContent(assistantMessageId, assistantContent);
+
+                // Update session
+                if (session) {
+                    const msg = session.messages.find(m => m.id === assistantMessageId);
+                    if (msg) {
+                        msg.content = assistantContent;
+                        saveSessionsToStorage();
                     }
                 }
+            } else if (event.error) {
+                showError(event.error);
+            }
+        };
+
+        const socket = await getChatSocket();
+        if (socket) {
+            try {
+                await socket.send(currentSessionId, messageText, stream, onEvent);
+            } catch (socketError) {
+                // Socket dropped mid-answer: continue the same answer over HTTP
+                if (stream.finished || !stream.messageId) {
+                    throw socketError;
+                }
+                console.warn('WebSocket closed during the answer, resuming over HTTP:', socketError);
+                const response = await resumeEventStream(stream);
+                if (!response) {
+                    throw socketError;
+                }
+                await readEventStreamWithResume(response, stream, onEvent);
             }
+        } else {
+            const response = await fetch('/api/chat', {
+                method: 'POST',
+                headers: {
+                    'Content-Type': 'application/json',
+                    'Accept': 'text/event-stream'
+                },
+                body: JSON.stringify({
+                    sessionId: currentSessionId,
+                    message: messageText
+                })
+            });
+
+            if (response.status === 429) {
+                throw new Error('The assistant is busy, please try again shortly');
+            }
+            if (!response.ok) {
+                throw new Error(`HTTP error! status: ${response.status}`);
+            }
+
+            await readEventStreamWithResume(response, stream, onEvent);
         }
 
     } catch (error) {
@@ -538,6 +549,185 @@ async function sendMessage() {
     }
 }
 
+// Read an answer stream to the end, resuming it when the connection drops mid-answer
+async function readEventStreamWithResume(response, stream, onEvent) {
+    let resumes = 0;
+    while (true) {
+        try {
+            await readEventStream(response, stream, onEvent);
+            return;
+        } catch (streamError) {
+            // Connection dropped mid-answer: pick up the same answer instead of regenerating it
+            if (stream.finished || !stream.messageId || resumes >= MAX_RESUME_ATTEMPTS) {
+                throw streamError;
+            }
+            resumes++;
+            console.warn('Answer stream interrupted, resuming:', streamError);
+            response = await resumeEventStream(stream);
+            if (!response) {
+                throw streamError;
+            }
+        }
+    }
+}
+
+// Read server-sent events from a fetch response, remembering the id of the last event handled
+async function readEventStream(response, stream, onEvent) {
+    const reader = response.body.getReader();
+    const decoder = new TextDecoder();
+    let buffer = '';
+    let eventName = 'message';
+    let eventId = null;
+
+    while (true) {
+        const { done, value } = await reader.read();
+
+        if (done) {
+            break;
+        }
+
+        buffer += decoder.decode(value, { stream: true });
+        const lines = buffer.split('\n');
+        buffer = lines.pop() || '';
+
+        for (const line of lines) {
+            if (line.startsWith('id:')) {
+                eventId = line.substring(3).trim();
+            } else if (line.startsWith('event:')) {
+                eventName = line.substring(6).trim();
+            } else if (line.startsWith('data:')) {
+                const data = line.substring(5).trim();
+
+                if (data) {
+                    try {
+                        onEvent(eventName, JSON.parse(data));
+                    } catch (e) {
+                        console.error('Error parsing SSE data:', e, data);
+                    }
+                }
+                if (eventId) {
+                    stream.lastEventId = eventId;
+                }
+            } else if (line.trim() === '') {
+                eventName = 'message';
+                eventId = null;
+            }
+        }
+    }
+
+    if (!stream.finished) {
+        throw new Error('Stream ended before the answer was complete');
+    }
+}
+
+// Reconnect to an answer stream after the last event received; null if it cannot be resumed
+async function resumeEventStream(stream) {
+    for (let attempt = 1; attempt <= MAX_RESUME_ATTEMPTS; attempt++) {
+        await new Promise(resolve => setTimeout(resolve, RESUME_DELAY_MS * attempt));
+
+        try {
+            const headers = { 'Accept': 'text/event-stream' };
+            if (stream.lastEventId) {
+                headers['Last-Event-ID'] = stream.lastEventId;
+            }
+
+            const response = await fetch(`/api/chat/${stream.messageId}/stream`, { headers });
+            if (response.ok) {
+                return response;
+            }
+            if (response.status === 404) {
+                return null;
+            }
+        } catch (e) {
+            console.warn(`Resume attempt ${attempt} failed:`, e);
+        }
+    }
+    return null;
+}
+
+// One WebSocket per tab carries every turn; null when WebSockets are disabled or unavailable
+function getChatSocket() {
+    if (!USE_WEBSOCKET || !('WebSocket' in window)) {
+        return Promise.resolve(null);
+    }
+    if (!chatSocketPromise) {
+        chatSocketPromise = openChatSocket().then(socket => {
+            if (!socket) {
+                chatSocketPromise = null;
+            }
+            return socket;
+        });
+    }
+    return chatSocketPromise;
+}
+
+function openChatSocket() {
+    return new Promise(resolve => {
+        const protocol = window.location.protocol === 'https:' ? 'wss:' : 'ws:';
+        let ws;
+        try {
+            ws = new WebSocket(`${protocol}//${window.location.host}/ws/chat`);
+        } catch (e) {
+            console.warn('WebSocket unavailable, using HTTP streaming:', e);
+            resolve(null);
+            return;
+        }
+
+        ws.onopen = () => resolve(new ChatSocket(ws));
+        ws.onerror = () => resolve(null);
+    });
+}
+
+// Turns multiplexed over one WebSocket, matched to their frames by a per-connection reference
+class ChatSocket {
+    constructor(ws) {
+        this.ws = ws;
+        this.turns = new Map();
+        this.nextRef = 1;
+
+        ws.onmessage = message => this.dispatch(JSON.parse(message.data));
+        ws.onclose = () => {
+            chatSocketPromise = null;
+            for (const turn of this.turns.values()) {
+                turn.reject(new Error('WebSocket connection closed'));
+            }
+            this.turns.clear();
+        };
+    }
+
+    // Start a turn; resolves once the answer is finished
+    send(sessionId, message, stream, onEvent) {
+        const ref = String(this.nextRef++);
+        return new Promise((resolve, reject) => {
+            this.turns.set(ref, { stream, onEvent, resolve, reject });
+            this.ws.send(JSON.stringify({ t: 'm', r: ref, s: sessionId, q: message }));
+        });
+    }
+
+    dispatch(frame) {
+        const turn = this.turns.get(frame.r);
+        if (!turn) {
+            if (frame.t === 'e' && frame.d) {
+                console.error('WebSocket error:', frame.d.error);
+            }
+            return;
+        }
+
+        try {
+            turn.onEvent(SOCKET_EVENTS[frame.t] || 'chunk', frame.d || {});
+        } catch (e) {
+            console.error('Error handling WebSocket frame:', e, frame);
+        }
+        if (frame.i) {
+            turn.stream.lastEventId = String(frame.i);
+        }
+        if (turn.stream.finished) {
+            this.turns.delete(frame.r);
+            turn.resolve();
+        }
+    }
+}
+
 // Generate a unique ID
 function generateId() {
     return Date.now().toString(36) + Math.random().toString(36).substr(2, 9);
@@ -0,0 +1,136 @@
+package com.example.mcpclient.benchmark;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Load test of the chat endpoint's threading: a burst of concurrent turns through the old thread-per-request
+ * pipeline (a raw thread blocking on the tool catalog, the tool call and the token stream, as
+ * ChatController.chatStream did before it returned a Flux) and through the reactive one, which chains the
+ * same stages without waiting. Both run against the same simulated backend latencies, so the difference is
+ * the threading alone. Prints the peak number of live threads and the turn latency percentiles.
+ * Not part of the test phase; run it with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.mcpclient.benchmark.ChatStreamLoadBenchmark -Dexec.args="1000"}
+ * where the argument is the number of concurrent turns (default 1000).
+ */
+public class ChatStreamLoadBenchmark {
+
+    private static final Duration CATALOG_LATENCY = Duration.ofMillis(20);
+    private static final Duration TOOL_LATENCY = Duration.ofMillis(150);
+    private static final Duration TOKEN_INTERVAL = Duration.ofMillis(25);
+    private static final int TOKENS = 40;
+
+    public static void main(String[] args) throws InterruptedException {
+        int turns = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+
+        // Warm up both paths before measuring
+        run("thread-per-request", Math.min(turns, 100), ChatStreamLoadBenchmark::threadPerRequest);
+        run("reactive", Math.min(turns, 100), ChatStreamLoadBenchmark::reactive);
+
+        System.out.printf("%-20s %8s %14s %10s %10s %10s%n", "pipeline", "turns", "peak threads", "p50 ms", "p99 ms", "max ms");
+        print("thread-per-request", turns, run("thread-per-request", turns, ChatStreamLoadBenchmark::threadPerRequest));
+        print("reactive", turns, run("reactive", turns, ChatStreamLoadBenchmark::reactive));
+    }
+
+    /**
+     * The old endpoint: one platform thread per turn, blocked for the whole turn
+     */
+    private static void threadPerRequest(Consumer<String> chunks, Runnable done) {
+        new Thread(() -> {
+            listTools().block();
+            callTool().block();
+            tokens().doOnNext(chunks).blockLast();
+            done.run();
+        }).start();
+    }
+
+    /**
+     * The reactive endpoint: the stages are chained and no thread waits on the backend
+     */
+    private static void reactive(Consumer<String> chunks, Runnable done) {
+        listTools()
+                .then(callTool())
+                .thenMany(tokens())
+                .doOnNext(chunks)
+                .doOnComplete(done)
+                .subscribe();
+    }
+
+    private static Mono<String> listTools() {
+        return Mono.delay(CATALOG_LATENCY).thenReturn("tools");
+    }
+
+    private static Mono<String> callTool() {
+        return Mono.delay(TOOL_LATENCY).thenReturn("result");
+    }
+
+    private static Flux<String> tokens() {
+        return Flux.interval(TOKEN_INTERVAL).take(TOKENS).map(i -> " token");
+    }
+
+    /**
+     * Start all turns at once and wait for them
+     */
+    private static Result run(String name, int turns, Pipeline pipeline) throws InterruptedException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        int baseline = threads.getThreadCount();
+        threads.resetPeakThreadCount();
+
+        long[] latencies = new long[turns];
+        AtomicInteger chunks = new AtomicInteger();
+        CountDownLatch finished = new CountDownLatch(turns);
+        for (int i = 0; i < turns; i++) {
+            int turn = i;
+            long start = System.nanoTime();
+            pipeline.start(chunk -> chunks.incrementAndGet(), () -> {
+                latencies[turn] = System.nanoTime() - start;
+                finished.countDown();
+            });
+        }
+        if (!finished.await(5, TimeUnit.MINUTES)) {
+            throw new IllegalStateException(name + " did not finish");
+        }
+        if (chunks.get() != turns * TOKENS) {
+            throw new IllegalStateException(name + " lost chunks: " + chunks.get());
+        }
+        return new Result(threads.getPeakThreadCount() - baseline, latencies);
+    }
+
+    private static void print(String name, int turns, Result result) {
+        long[] sorted = result.latencies.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-20s %8d %14d %10.1f %10.1f %10.1f%n", name, turns, result.extraThreads,
+                millis(percentile(sorted, 0.50)), millis(percentile(sorted, 0.99)), millis(sorted[sorted.length - 1]));
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(fraction * sorted.length) - 1)];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private interface Pipeline {
+        void start(Consumer<String> chunks, Runnable done);
+    }
+
+    private static class Result {
+        final int extraThreads; // peak live threads above the count before the burst
+        final long[] latencies;
+
+        Result(int extraThreads, long[] latencies) {
+            this.extraThreads = extraThreads;
+            this.latencies = latencies;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.mcpclient.benchmark;
+
+import com.example.mcpclient.service.SseEventEncoder;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chunk payload encoding: the single-pass encoder against Jackson serializing the equivalent map.
+ * Not part of the test phase; run it with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.mcpclient.benchmark.SseEventEncoderBenchmark}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SseEventEncoderBenchmark {
+
+    /**
+     * token: a typical streamed chunk; markdown: quotes, newlines and a tab; long: a whole answer at once
+     */
+    @Param({"token", "markdown", "long"})
+    public String payload;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private String content;
+
+    @Setup
+    public void setUp() {
+        content = switch (payload) {
+            case "token" -> " patient";
+            case "markdown" -> "**Blood pressure:** 120/80 mmHg\n- \"Stable\" since admission\n\tNo changes\n";
+            default -> "The patient was admitted with chest pain and \"shortness of breath\".\n".repeat(40);
+        };
+    }
+
+    @Benchmark
+    public String encoder() {
+        return SseEventEncoder.stringObject("{\"content\": \"", content);
+    }
+
+    @Benchmark
+    public String jackson() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(Collections.singletonMap("content", content));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SseEventEncoderBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
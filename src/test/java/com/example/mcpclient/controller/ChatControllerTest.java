@@ -0,0 +1,76 @@
+package com.example.mcpclient.controller;
+
+import com.example.mcpclient.model.ChatSession;
+import com.example.mcpclient.model.Message;
+import com.example.mcpclient.persistence.NoopSessionJournal;
+import com.example.mcpclient.service.ChatTurnService;
+import com.example.mcpclient.service.McpClientService;
+import com.example.mcpclient.service.SessionEvictionListener;
+import com.example.mcpclient.service.SessionService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class ChatControllerTest {
+
+    private final NoopSessionJournal journal = new NoopSessionJournal();
+
+    @Test
+    void messagesAnswerNotModifiedUntilTheSessionChanges() throws Exception {
+        SessionService sessionService = sessionService();
+        MockMvc mockMvc = mockMvc(sessionService);
+        ChatSession session = sessionService.createSession("Test");
+        Message first = new Message("user", "Hello");
+        sessionService.addMessage(session, first);
+        String path = "/api/sessions/" + session.getId() + "/messages";
+
+        String etag = mockMvc.perform(get(path))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.reset").value(true))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        mockMvc.perform(get(path).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        sessionService.addMessage(session, new Message("assistant", "Hi"));
+
+        String changed = mockMvc.perform(get(path).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(changed).isNotEqualTo(etag);
+        mockMvc.perform(get(path).param("after", first.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.reset").value(false))
+                .andExpect(jsonPath("$.messages.length()").value(1));
+    }
+
+    @Test
+    void listingEtagFromBeforeARestartIsNotReused() throws Exception {
+        String before = mockMvc(sessionService()).perform(get("/api/sessions"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // A restarted store starts over at version 0, just like the first one did
+        mockMvc(sessionService()).perform(get("/api/sessions").header(HttpHeaders.IF_NONE_MATCH, before))
+                .andExpect(status().isOk());
+    }
+
+    private SessionService sessionService() {
+        return new SessionService(3_600_000, 1 << 20, 100,
+                new StaticListableBeanFactory().getBeanProvider(SessionEvictionListener.class),
+                journal, new SimpleMeterRegistry());
+    }
+
+    private MockMvc mockMvc(SessionService sessionService) {
+        return MockMvcBuilders.standaloneSetup(new ChatController(sessionService, mock(McpClientService.class),
+                mock(ChatTurnService.class))).build();
+    }
+}
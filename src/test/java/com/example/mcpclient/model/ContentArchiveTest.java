@@ -0,0 +1,97 @@
+package com.example.mcpclient.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContentArchiveTest {
+
+    private static final String CONTENT = "Blutdruck 120/80. ".repeat(300).substring(0, 5000);
+
+    private final ContentArchive.Usage usage = new ContentArchive.Usage();
+
+    @Test
+    void archivedContentReadsBackUnchanged() {
+        ChatSession session = new ChatSession();
+        List<String> contents = List.of(
+                "Befund unauffällig. ".repeat(200),
+                randomText(3000),              // does not compress, stored as is
+                "ü€😀".repeat(2000),            // multi-byte and non-BMP characters
+                "short");
+        contents.forEach(content -> session.addMessage(new Message("assistant", content)));
+
+        session.archiveMessages(() -> new ContentArchive(1 << 16, usage), 0, 512);
+
+        assertThat(session.getMessages()).extracting(Message::isArchived).containsExactly(true, true, true, false);
+        assertThat(session.getMessages()).extracting(Message::getContent).containsExactlyElementsOf(contents);
+        assertThat(usage.getArchivedMessages()).isEqualTo(3);
+    }
+
+    @Test
+    void archivedBytesCountTowardsTheSessionEstimate() {
+        ChatSession session = new ChatSession();
+        session.addMessage(new Message("assistant", "x".repeat(10_000)));
+        session.addMessage(new Message("assistant", "recent"));
+
+        session.archiveMessages(() -> new ContentArchive(1 << 16, usage), 1, 512);
+
+        // A small session holds one small page, not a whole page-bytes page
+        assertThat(usage.getOffHeapBytes()).isPositive().isLessThan(1 << 16);
+        assertThat(session.getEstimatedBytes()).isGreaterThanOrEqualTo(usage.getOffHeapBytes());
+    }
+
+    @Test
+    void releaseStopsCountingThePagesOfTheSession() {
+        ChatSession kept = archivedSession();
+        ChatSession released = archivedSession();
+        long oneSession = kept.getEstimatedBytes();
+
+        released.releaseArchive();
+
+        assertThat(released.getEstimatedBytes()).isLessThan(oneSession);
+        assertThat(kept.getEstimatedBytes()).isEqualTo(oneSession);
+        assertThat(kept.getMessages().get(0).getContent()).hasSize(5000);
+    }
+
+    @Test
+    void messageReadAfterItsSessionIsClearedKeepsItsContent() {
+        ChatSession session = archivedSession();
+        Message held = session.getMessages().get(0); // e.g. a response still being serialized
+
+        session.clearMessages();
+
+        assertThat(session.getEstimatedBytes()).isLessThan(1000);
+        assertThat(held.isArchived()).isTrue();
+        assertThat(held.getContent()).isEqualTo(CONTENT);
+    }
+
+    @Test
+    void messageReadAfterItsSessionIsEvictedKeepsItsContent() {
+        ChatSession session = archivedSession();
+        Message held = session.getMessages().get(0);
+
+        session.releaseArchive();
+
+        assertThat(held.getContent()).isEqualTo(CONTENT);
+        assertThat(session.getMessages()).extracting(Message::getContent).containsExactly(CONTENT);
+    }
+
+    private ChatSession archivedSession() {
+        ChatSession session = new ChatSession();
+        session.addMessage(new Message("assistant", CONTENT));
+        session.archiveMessages(() -> new ContentArchive(1 << 16, usage), 0, 512);
+        return session;
+    }
+
+    private static String randomText(int length) {
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append((char) ('!' + random.nextInt(90)));
+        }
+        return text.toString();
+    }
+}
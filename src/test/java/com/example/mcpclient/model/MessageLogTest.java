@@ -0,0 +1,163 @@
+package com.example.mcpclient.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MessageLogTest {
+
+    // The first chunk holds 16 messages, the next 32, then 64
+    private static final int FIRST_CHUNK = 16;
+
+    @Test
+    void keepsOrderAcrossChunkBoundaries() {
+        MessageLog log = new MessageLog();
+        List<Message> appended = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Message message = message("w", i);
+            log.append(message);
+            appended.add(message);
+        }
+
+        assertThat(log.size()).isEqualTo(200);
+        assertThat(log.snapshot()).containsExactlyElementsOf(appended);
+        for (int i : new int[]{0, 15, 16, 47, 48, 111, 112, 199}) {
+            assertThat(log.indexOf(appended.get(i).getId())).isEqualTo(i);
+            assertThat(log.findById(appended.get(i).getId())).containsSame(appended.get(i));
+        }
+        assertThat(log.indexOf("unknown")).isEqualTo(-1);
+        assertThat(log.indexOf(null)).isEqualTo(-1);
+    }
+
+    @Test
+    void snapshotTakenAtAChunkBoundaryIgnoresLaterAppends() {
+        MessageLog log = new MessageLog();
+        for (int i = 0; i < FIRST_CHUNK; i++) {
+            log.append(message("w", i));
+        }
+
+        List<Message> snapshot = log.snapshot();
+        List<Message> copy = new ArrayList<>(snapshot);
+        for (int i = FIRST_CHUNK; i < 3 * FIRST_CHUNK; i++) {
+            log.append(message("w", i));
+        }
+
+        assertThat(snapshot).hasSize(FIRST_CHUNK).containsExactlyElementsOf(copy);
+        assertThat(snapshot.subList(FIRST_CHUNK - 1, FIRST_CHUNK)).containsExactly(copy.get(FIRST_CHUNK - 1));
+        assertThatThrownBy(() -> snapshot.get(FIRST_CHUNK)).isInstanceOf(IndexOutOfBoundsException.class);
+        assertThatThrownBy(() -> snapshot.add(message("w", 0))).isInstanceOf(UnsupportedOperationException.class);
+        assertThat(log.snapshot()).hasSize(3 * FIRST_CHUNK);
+    }
+
+    @Test
+    void concurrentAppendsAreAllKeptInPerWriterOrder() throws Exception {
+        int writers = 8;
+        int perWriter = 2_000;
+        MessageLog log = new MessageLog();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                String writer = "w" + w;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < perWriter; i++) {
+                        log.append(message(writer, i));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<Message> messages = log.snapshot();
+        assertThat(messages).hasSize(writers * perWriter);
+        assertPrefixConsistent(messages);
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < messages.size(); i++) {
+            ids.add(messages.get(i).getId());
+            assertThat(log.indexOf(messages.get(i).getId())).isEqualTo(i);
+        }
+        assertThat(ids).hasSize(writers * perWriter);
+    }
+
+    @Test
+    void snapshotsTakenDuringAppendsAreGapFreePrefixes() throws Exception {
+        int writers = 4;
+        int perWriter = 5_000;
+        MessageLog log = new MessageLog();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(writers + 1);
+        try {
+            Future<Integer> reader = executor.submit(() -> {
+                int checked = 0;
+                do {
+                    List<Message> snapshot = log.snapshot();
+                    int size = snapshot.size();
+                    assertPrefixConsistent(snapshot);
+                    // Appends made while it was being checked do not show up in it
+                    assertThat(snapshot).hasSize(size);
+                    checked++;
+                } while (writing.get());
+                return checked;
+            });
+
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                String writer = "w" + w;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < perWriter; i++) {
+                        log.append(message(writer, i));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+            writing.set(false);
+
+            assertThat(reader.get(30, TimeUnit.SECONDS)).isPositive();
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(log.size()).isEqualTo(writers * perWriter);
+    }
+
+    /**
+     * Every slot is filled and each writer's messages appear in the order it appended them, without gaps
+     */
+    private static void assertPrefixConsistent(List<Message> messages) {
+        Map<String, Integer> next = new HashMap<>();
+        for (Message message : messages) {
+            assertThat(message).isNotNull();
+            String writer = message.getRole();
+            int sequence = Integer.parseInt(message.getContent());
+            assertThat(sequence).as("next message of %s", writer).isEqualTo(next.getOrDefault(writer, 0));
+            next.put(writer, sequence + 1);
+        }
+    }
+
+    private static Message message(String writer, int sequence) {
+        return new Message(writer, Integer.toString(sequence));
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.mcpclient.persistence;
+
+import com.example.mcpclient.model.ChatSession;
+import com.example.mcpclient.model.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileSessionJournalTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<FileSessionJournal> journals = new ArrayList<>();
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void tearDown() {
+        journals.forEach(FileSessionJournal::close);
+    }
+
+    @Test
+    void recoversJournaledSessions() throws IOException {
+        FileSessionJournal journal = open();
+        ChatSession session = session("Ward round");
+        journal.append(JournalEvent.created(session));
+        journal.append(JournalEvent.message(session.getId(), session.getMessages().get(0)));
+        journal.close();
+
+        List<ChatSession> recovered = open().recover();
+
+        assertThat(recovered).singleElement().satisfies(restored -> {
+            assertThat(restored.getId()).isEqualTo(session.getId());
+            assertThat(restored.getMessages()).extracting(Message::getContent).containsExactly("Hello");
+        });
+    }
+
+    @Test
+    void evictedSessionSurvivesSnapshotsAndRestarts() throws IOException {
+        FileSessionJournal journal = open();
+        ChatSession session = session("Ward round");
+        journal.append(JournalEvent.created(session));
+        journal.append(JournalEvent.message(session.getId(), session.getMessages().get(0)));
+        journal.evict(session);
+        // A snapshot of the live sessions no longer contains it and drops the segments that did
+        journal.snapshot(List.of());
+        journal.close();
+
+        FileSessionJournal reopened = open();
+        assertThat(reopened.recover()).isEmpty();
+        assertThat(reopened.restore(session.getId())).hasValueSatisfying(restored ->
+                assertThat(restored.getMessages()).extracting(Message::getContent).containsExactly("Hello"));
+    }
+
+    @Test
+    void evictedSessionCanBeRestoredBeforeItIsWritten() throws IOException {
+        FileSessionJournal journal = open();
+        ChatSession session = session("Ward round");
+        journal.evict(session);
+
+        assertThat(journal.restore(session.getId())).isPresent();
+    }
+
+    @Test
+    void restoredSessionIsLiveAfterRestart() throws IOException {
+        FileSessionJournal journal = open();
+        ChatSession session = session("Ward round");
+        journal.append(JournalEvent.created(session));
+        journal.append(JournalEvent.message(session.getId(), session.getMessages().get(0)));
+        journal.evict(session);
+        ChatSession restored = journal.restore(session.getId()).orElseThrow();
+        journal.append(JournalEvent.restored(session.getId()));
+        Message reply = new Message("assistant", "Hi");
+        restored.addMessage(reply);
+        journal.append(JournalEvent.message(session.getId(), reply));
+        journal.close();
+
+        assertThat(open().recover()).singleElement().satisfies(recovered ->
+                assertThat(recovered.getMessages()).extracting(Message::getContent).containsExactly("Hello", "Hi"));
+    }
+
+    @Test
+    void deletingAnEvictedSessionRemovesItsFile() throws IOException {
+        FileSessionJournal journal = open();
+        ChatSession session = session("Ward round");
+        journal.append(JournalEvent.created(session));
+        journal.evict(session);
+        journal.append(JournalEvent.deleted(session.getId()));
+        journal.close();
+
+        FileSessionJournal reopened = open();
+        assertThat(reopened.recover()).isEmpty();
+        assertThat(reopened.restore(session.getId())).isEmpty();
+    }
+
+    @Test
+    void failedWriteIsRetriedInANewSegment() throws Exception {
+        FileSessionJournal journal = open();
+        // A directory where the first segment should go makes opening it fail
+        Path blocker = Files.createDirectory(directory.resolve("segment-00000000000000000000.log"));
+        ChatSession first = session("First");
+        journal.append(JournalEvent.created(first));
+        awaitFile(directory.resolve("segment-00000000000000000001.log"));
+        ChatSession second = session("Second");
+        journal.append(JournalEvent.created(second));
+        journal.close();
+        Files.delete(blocker);
+
+        assertThat(meterRegistry.get("chat.journal.write.failures").counter().count()).isGreaterThanOrEqualTo(1);
+        assertThat(open().recover()).extracting(ChatSession::getId).containsExactly(first.getId(), second.getId());
+    }
+
+    @Test
+    void damagedRecordOnlyDropsTheRestOfItsSegment() throws IOException {
+        ChatSession session = session("Ward round");
+        Message lost = new Message("user", "lost");
+        Message kept = new Message("assistant", "kept");
+        Files.writeString(directory.resolve("segment-00000000000000000000.log"),
+                line(JournalEvent.created(session)) + "{\"type\":\"MESS\n" + line(JournalEvent.message(session.getId(), lost)),
+                StandardCharsets.UTF_8);
+        Files.writeString(directory.resolve("segment-00000000000000000001.log"),
+                line(JournalEvent.message(session.getId(), kept)), StandardCharsets.UTF_8);
+
+        assertThat(open().recover()).singleElement().satisfies(recovered ->
+                assertThat(recovered.getMessages()).extracting(Message::getContent).containsExactly("kept"));
+    }
+
+    private String line(JournalEvent event) throws IOException {
+        return objectMapper.writeValueAsString(event) + "\n";
+    }
+
+    private static void awaitFile(Path path) throws InterruptedException {
+        for (int i = 0; i < 100 && !Files.exists(path); i++) {
+            Thread.sleep(50);
+        }
+        assertThat(path).exists();
+    }
+
+    private FileSessionJournal open() throws IOException {
+        FileSessionJournal journal = new FileSessionJournal(directory, 1 << 20, 64, 1024, objectMapper, meterRegistry);
+        journals.add(journal);
+        return journal;
+    }
+
+    private static ChatSession session(String name) {
+        ChatSession session = new ChatSession(name);
+        session.addMessage(new Message("user", "Hello"));
+        return session;
+    }
+}
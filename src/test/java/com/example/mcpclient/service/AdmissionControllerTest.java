@@ -0,0 +1,97 @@
+package com.example.mcpclient.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdmissionControllerTest {
+
+    private static final String BACKEND = "ollama";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AdmissionController admission =
+            new AdmissionController(true, 1, 4, 30_000, new MockEnvironment(), meterRegistry);
+
+    @Test
+    void cancellingAGrantedTurnFreesItsSlotOnce() {
+        Disposable turn = admission.admit(BACKEND, "alice", Flux::never).subscribe();
+        assertThat(active()).isEqualTo(1);
+
+        turn.dispose();
+
+        assertThat(active()).isZero();
+        assertThat(queued()).isZero();
+    }
+
+    @Test
+    void cancellingAGrantedTurnHandsItsSlotToExactlyOneWaiter() {
+        AtomicInteger bobStarted = new AtomicInteger();
+        AtomicInteger carolStarted = new AtomicInteger();
+
+        Disposable alice = admission.admit(BACKEND, "alice", Flux::never).subscribe();
+        Disposable bob = admission.admit(BACKEND, "bob", () -> {
+            bobStarted.incrementAndGet();
+            return Flux.never();
+        }).subscribe();
+        Disposable carol = admission.admit(BACKEND, "carol", () -> {
+            carolStarted.incrementAndGet();
+            return Flux.never();
+        }).subscribe();
+        assertThat(active()).isEqualTo(1);
+        assertThat(queued()).isEqualTo(2);
+
+        alice.dispose();
+
+        assertThat(bobStarted).hasValue(1);
+        assertThat(carolStarted).hasValue(0);
+        assertThat(active()).isEqualTo(1);
+        assertThat(queued()).isEqualTo(1);
+
+        bob.dispose();
+        assertThat(carolStarted).hasValue(1);
+        assertThat(active()).isEqualTo(1);
+
+        carol.dispose();
+        assertThat(active()).isZero();
+        assertThat(queued()).isZero();
+    }
+
+    @Test
+    void completedTurnReleasesItsSlot() {
+        assertThat(admission.admit(BACKEND, "alice", () -> Flux.just("a", "b")).collectList().block())
+                .containsExactly("a", "b");
+
+        assertThat(active()).isZero();
+    }
+
+    @Test
+    void cancelledWaiterLeavesTheQueue() {
+        Disposable alice = admission.admit(BACKEND, "alice", Flux::never).subscribe();
+        AtomicInteger bobStarted = new AtomicInteger();
+        Disposable bob = admission.admit(BACKEND, "bob", () -> {
+            bobStarted.incrementAndGet();
+            return Flux.never();
+        }).subscribe();
+
+        bob.dispose();
+        assertThat(queued()).isZero();
+
+        alice.dispose();
+        assertThat(bobStarted).hasValue(0);
+        assertThat(active()).isZero();
+    }
+
+    private double active() {
+        return meterRegistry.get("chat.admission.active").tag("backend", BACKEND).gauge().value();
+    }
+
+    private double queued() {
+        return meterRegistry.get("chat.admission.queue.depth").tag("backend", BACKEND).gauge().value();
+    }
+}
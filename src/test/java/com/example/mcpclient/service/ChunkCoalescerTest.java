@@ -0,0 +1,57 @@
+package com.example.mcpclient.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChunkCoalescerTest {
+
+    @Test
+    void firstChunkIsSentAloneAndTheRestMergedUntilTheEnd() {
+        ChunkCoalescer coalescer = new ChunkCoalescer(true, 100, 10_000, new SimpleMeterRegistry());
+
+        assertThat(coalescer.coalesce(Flux.just("Hel", "lo", " wor", "ld")).collectList().block(Duration.ofSeconds(5)))
+                .containsExactly("Hel", "lo world");
+    }
+
+    @Test
+    void flushesWhenTheBufferReachesMaxChars() {
+        ChunkCoalescer coalescer = new ChunkCoalescer(true, 10, 10_000, new SimpleMeterRegistry());
+
+        assertThat(coalescer.coalesce(Flux.just("a", "123456", "789012", "x")).collectList().block(Duration.ofSeconds(5)))
+                .containsExactly("a", "123456789012", "x");
+    }
+
+    @Test
+    void flushesWhenTheOldestChunkIsOlderThanMaxDelay() {
+        ChunkCoalescer coalescer = new ChunkCoalescer(true, 100, 20, new SimpleMeterRegistry());
+        Flux<String> chunks = Flux.just("a", "b")
+                .concatWith(Mono.delay(Duration.ofMillis(500)).thenMany(Flux.just("c")));
+
+        assertThat(coalescer.coalesce(chunks).collectList().block(Duration.ofSeconds(5)))
+                .containsExactly("a", "b", "c");
+    }
+
+    @Test
+    void pendingTextIsFlushedBeforeAnError() {
+        ChunkCoalescer coalescer = new ChunkCoalescer(true, 100, 10_000, new SimpleMeterRegistry());
+        Flux<String> chunks = Flux.just("a", "b", "c").concatWith(Flux.error(new IllegalStateException("boom")));
+
+        assertThat(coalescer.coalesce(chunks).onErrorResume(e -> Flux.just("error: " + e.getMessage()))
+                .collectList().block(Duration.ofSeconds(5)))
+                .containsExactly("a", "bc", "error: boom");
+    }
+
+    @Test
+    void passesChunksThroughWhenDisabled() {
+        ChunkCoalescer coalescer = new ChunkCoalescer(false, 100, 10_000, new SimpleMeterRegistry());
+
+        assertThat(coalescer.coalesce(Flux.just("a", "b", "c")).collectList().block(Duration.ofSeconds(5)))
+                .containsExactly("a", "b", "c");
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.mcpclient.service;
+
+import com.example.mcpclient.model.ChatSession;
+import com.example.mcpclient.model.Message;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ConversationHistoryManagerTest {
+
+    // 9 tokens of content plus 4 of overhead per message, so a budget of 40 keeps only the newest message
+    private static final String CONTENT = "x".repeat(36);
+
+    @Test
+    void summaryOfClearedMessagesIsDropped() throws InterruptedException {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        CountDownLatch secondStarted = new CountDownLatch(1);
+        CountDownLatch releaseSecond = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+
+        ChatClient chatClient = mock(ChatClient.class, RETURNS_DEEP_STUBS);
+        when(chatClient.prompt(any(Prompt.class)).call().content()).thenAnswer(invocation -> {
+            if (calls.incrementAndGet() == 1) {
+                firstStarted.countDown();
+                releaseFirst.await();
+                return "summary of the old messages";
+            }
+            secondStarted.countDown();
+            releaseSecond.await();
+            return "summary of the new messages";
+        });
+        ConversationHistoryManager manager = new ConversationHistoryManager(chatClient, 40, 20, 0.6);
+
+        ChatSession session = new ChatSession("Test");
+        addMessages(session, 10);
+        manager.history(session, "next");
+        assertThat(firstStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // Cleared and refilled past the summarized range while the first summary is being written
+        session.clearMessages();
+        addMessages(session, 10);
+        releaseFirst.countDown();
+
+        try {
+            // The second summary only starts once the first one has finished, including its apply step
+            while (!secondStarted.await(10, TimeUnit.MILLISECONDS)) {
+                manager.history(session, "next");
+            }
+            assertThat(session.getSummary()).isNull();
+            assertThat(session.getSummarizedCount()).isZero();
+        } finally {
+            releaseSecond.countDown();
+        }
+    }
+
+    private static void addMessages(ChatSession session, int count) {
+        for (int i = 0; i < count; i++) {
+            session.addMessage(new Message(i % 2 == 0 ? "user" : "assistant", CONTENT));
+        }
+    }
+}
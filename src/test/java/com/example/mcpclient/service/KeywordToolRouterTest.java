@@ -0,0 +1,97 @@
+package com.example.mcpclient.service;
+
+import com.example.mcpclient.model.McpTool;
+import com.example.mcpclient.model.ToolCall;
+import com.example.mcpclient.model.ToolCatalog;
+import com.example.mcpclient.model.ToolRoute;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeywordToolRouterTest {
+
+    private static final ToolCatalog CATALOG = new ToolCatalog(1, List.of(
+            new McpTool("get_patient_details", "Get the details of a patient by id", Map.of(
+                    "type", "object",
+                    "properties", Map.of("patient_id", Map.of("type", "integer")),
+                    "required", List.of("patient_id"))),
+            new McpTool("search_patients_by_name", "Search patients by their name", Map.of(
+                    "type", "object",
+                    "properties", Map.of("name", Map.of("type", "string")),
+                    "required", List.of("name")))), Instant.now());
+
+    private static final ToolCatalog VITALS_CATALOG = new ToolCatalog(1, List.of(
+            new McpTool("get_patient_vitals", "Get the vital signs of a patient", Map.of(
+                    "type", "object",
+                    "properties", Map.of(
+                            "patientId", Map.of("type", "integer"),
+                            "days", Map.of("type", "integer"),
+                            "limit", Map.of("type", "integer")),
+                    "required", List.of("patientId"))),
+            CATALOG.getTools().get(1)), Instant.now());
+
+    private final KeywordToolRouter router = new KeywordToolRouter();
+
+    @Test
+    void routesToTheBestToolWithItsIdArgument() {
+        Optional<ToolRoute> route = router.route("Show details for patient 42", CATALOG);
+
+        assertThat(route).hasValueSatisfying(r -> {
+            assertThat(r.getCalls()).containsExactly(new ToolCall("get_patient_details", Map.of("patient_id", 42L)));
+            assertThat(r.getConfidence()).isBetween(0.0, 1.0).isPositive();
+        });
+    }
+
+    @Test
+    void extractsNamesForNameProperties() {
+        Optional<ToolRoute> route = router.route("Search patients named John Smith", CATALOG);
+
+        assertThat(route).hasValueSatisfying(r -> assertThat(r.getCalls())
+                .containsExactly(new ToolCall("search_patients_by_name", Map.of("name", "John Smith"))));
+    }
+
+    @Test
+    void optionalNumbersAreLeftOutWithoutACue() {
+        Optional<ToolRoute> route = router.route("vitals for patient 42", VITALS_CATALOG);
+
+        assertThat(route).hasValueSatisfying(r -> assertThat(r.getCalls())
+                .containsExactly(new ToolCall("get_patient_vitals", Map.of("patientId", 42L))));
+    }
+
+    @Test
+    void optionalNumbersTakeTheNumberTheirWordsPointTo() {
+        assertThat(router.route("vitals for patient 42 over the last 7 days", VITALS_CATALOG))
+                .hasValueSatisfying(r -> assertThat(r.getCalls()).containsExactly(
+                        new ToolCall("get_patient_vitals", Map.of("patientId", 42L, "days", 7L))));
+        assertThat(router.route("Show vitals for patient 42, limit 5", VITALS_CATALOG))
+                .hasValueSatisfying(r -> assertThat(r.getCalls()).containsExactly(
+                        new ToolCall("get_patient_vitals", Map.of("patientId", 42L, "limit", 5L))));
+    }
+
+    @Test
+    void noRouteWhenTheIdIsAmbiguous() {
+        assertThat(router.route("vitals for patient 42 and 43", VITALS_CATALOG)).isEmpty();
+    }
+
+    @Test
+    void noRouteWhenARequiredArgumentIsMissing() {
+        assertThat(router.route("Show patient details", CATALOG)).isEmpty();
+    }
+
+    @Test
+    void noRouteWithoutMatchingTerms() {
+        assertThat(router.route("How is the weather today?", CATALOG)).isEmpty();
+        assertThat(router.route("anything", new ToolCatalog(2, List.of(), Instant.now()))).isEmpty();
+    }
+
+    @Test
+    void termsAreSplitLowerCasedAndStemmed() {
+        assertThat(KeywordToolRouter.terms("getPatientNotes for search_records 42"))
+                .containsExactly("patient", "note", "search", "record");
+    }
+}
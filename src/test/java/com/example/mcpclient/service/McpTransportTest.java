@@ -0,0 +1,136 @@
+package com.example.mcpclient.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class McpTransportTest {
+
+    private static final long TIMEOUT_MILLIS = 300;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final BlockingQueue<Object> cancelledIds = new LinkedBlockingQueue<>();
+    private HttpServer server;
+    private McpTransport transport;
+
+    @AfterEach
+    void tearDown() {
+        if (transport != null) {
+            transport.close();
+        }
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void batchRefusedAsInvalidRequestIsRejected() throws Exception {
+        start("{\"jsonrpc\": \"2.0\", \"id\": null, \"error\": {\"code\": -32600, \"message\": \"Invalid Request\"}}", 200);
+
+        assertThatThrownBy(() -> transport.requestBatch("tools/call", List.of(Map.of(), Map.of())).block())
+                .isInstanceOf(McpTransport.BatchRejectedException.class);
+    }
+
+    @Test
+    void batchRefusedWithClientErrorIsRejected() throws Exception {
+        start("{}", 400);
+
+        assertThatThrownBy(() -> transport.requestBatch("tools/call", List.of(Map.of(), Map.of())).block())
+                .isInstanceOf(McpTransport.BatchRejectedException.class);
+    }
+
+    @Test
+    void timedOutBatchIsCancelledOnTheServer() throws Exception {
+        start(null, 202);
+
+        assertThatThrownBy(() -> transport.requestBatch("tools/call", List.of(Map.of(), Map.of())).block())
+                .isNotInstanceOf(McpTransport.BatchRejectedException.class)
+                .hasCauseInstanceOf(TimeoutException.class);
+
+        assertThat(cancelled(2)).hasSize(2);
+    }
+
+    @Test
+    void timedOutRequestIsCancelledOnTheServer() throws Exception {
+        start(null, 202);
+
+        assertThatThrownBy(() -> transport.request("tools/call", Map.of()).block())
+                .hasCauseInstanceOf(TimeoutException.class);
+
+        assertThat(cancelled(1)).hasSize(1);
+    }
+
+    /**
+     * Serve initialize and notifications; every tools/call request or batch gets the given reply
+     */
+    private void start(String toolsReply, int toolsStatus) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/mcp", exchange -> {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            if (body.trim().startsWith("[")) {
+                reply(exchange, toolsStatus, toolsReply);
+                return;
+            }
+            Map<String, Object> message = objectMapper.readValue(body, new TypeReference<Map<String, Object>>() {});
+            Object method = message.get("method");
+            if ("initialize".equals(method)) {
+                reply(exchange, 200, "{\"jsonrpc\": \"2.0\", \"id\": " + message.get("id") + ", \"result\": {}}");
+            } else if ("notifications/cancelled".equals(method)) {
+                cancelledIds.add(((Map<?, ?>) message.get("params")).get("requestId"));
+                reply(exchange, 202, null);
+            } else if ("tools/call".equals(method)) {
+                reply(exchange, toolsStatus, toolsReply);
+            } else {
+                reply(exchange, 202, null);
+            }
+        });
+        server.start();
+
+        transport = new McpTransport("http://localhost:" + server.getAddress().getPort() + "/mcp",
+                TIMEOUT_MILLIS, 4, false, objectMapper);
+    }
+
+    private static void reply(HttpExchange exchange, int status, String body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    private Set<Object> cancelled(int expected) throws InterruptedException {
+        Set<Object> ids = new HashSet<>();
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (ids.size() < expected && System.nanoTime() < deadline) {
+            Object id = cancelledIds.poll(100, TimeUnit.MILLISECONDS);
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.mcpclient.service;
+
+import com.example.mcpclient.model.ChatSession;
+import com.example.mcpclient.model.Message;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RequestCoalescerTest {
+
+    private static final String QUESTION = "Show my patients";
+
+    private final AtomicInteger generations = new AtomicInteger();
+    private final Supplier<Flux<String>> work = () -> {
+        generations.incrementAndGet();
+        return Flux.never();
+    };
+    private final List<Disposable> subscriptions = new ArrayList<>();
+    private RequestCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        McpClientService mcpClientService = mock(McpClientService.class);
+        when(mcpClientService.getToolCatalog()).thenReturn(Mono.empty());
+        coalescer = new RequestCoalescer(mcpClientService, new SimpleMeterRegistry(), true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        subscriptions.forEach(Disposable::dispose);
+    }
+
+    @Test
+    void sameTokenSharesOneGeneration() {
+        start(session(), "token-a");
+        start(session(), "token-a");
+
+        assertThat(generations).hasValue(1);
+    }
+
+    @Test
+    void differentTokensNeverShare() {
+        // Same claims in both payloads: unverified claims must not decide sharing
+        start(session(), "eyJhbGciOiJub25lIn0.eyJvcmciOiJhY21lIiwicm9sZSI6ImRvY3RvciJ9.a");
+        start(session(), "eyJhbGciOiJub25lIn0.eyJvcmciOiJhY21lIiwicm9sZSI6ImRvY3RvciJ9.b");
+
+        assertThat(generations).hasValue(2);
+    }
+
+    @Test
+    void sessionsWithoutTokenNeverShare() {
+        start(session(), null);
+        start(session(), "");
+
+        assertThat(generations).hasValue(2);
+    }
+
+    @Test
+    void differentHistoriesNeverShare() {
+        ChatSession first = new ChatSession();
+        first.addMessage(new Message("user", "Hello"));
+        first.addMessage(new Message("user", QUESTION));
+        ChatSession second = session();
+
+        start(first, "token-a");
+        start(second, "token-a");
+
+        assertThat(generations).hasValue(2);
+    }
+
+    @Test
+    void historyDigestOnlyDependsOnTheMessages() {
+        ChatSession first = new ChatSession();
+        ChatSession second = new ChatSession();
+        for (String content : List.of("a", "b", "c")) {
+            first.addMessage(new Message("user", content));
+            first.historyDigest(first.getMessageCount()); // hashed incrementally
+            second.addMessage(new Message("user", content));
+        }
+
+        assertThat(first.historyDigest(3)).isEqualTo(second.historyDigest(3));
+        assertThat(first.historyDigest(2)).isNotEqualTo(first.historyDigest(3));
+
+        first.clearMessages();
+        first.addMessage(new Message("user", "x"));
+        second.clearMessages();
+        second.addMessage(new Message("user", "x"));
+        assertThat(first.historyDigest(1)).isEqualTo(second.historyDigest(1));
+    }
+
+    private ChatSession session() {
+        ChatSession session = new ChatSession();
+        session.addMessage(new Message("user", QUESTION));
+        return session;
+    }
+
+    private void start(ChatSession session, String token) {
+        subscriptions.add(coalescer.share(session, QUESTION, token, work).subscribe());
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.mcpclient.service;
+
+import com.example.mcpclient.model.ChatSession;
+import com.example.mcpclient.model.Message;
+import com.example.mcpclient.persistence.FileSessionJournal;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SessionServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private FileSessionJournal journal;
+    private SessionService sessionService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        journal = new FileSessionJournal(directory, 1 << 20, 64, 1024, new ObjectMapper().findAndRegisterModules(),
+                new SimpleMeterRegistry());
+        sessionService = new SessionService(3_600_000, 1 << 20, 1,
+                new StaticListableBeanFactory().getBeanProvider(SessionEvictionListener.class),
+                journal, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        journal.close();
+    }
+
+    @Test
+    void evictedSessionIsRestoredOnLookup() {
+        ChatSession first = sessionService.createSession("First");
+        sessionService.addMessage(first, new Message("user", "Hello"));
+
+        // Over the count limit of one: the first session leaves memory
+        sessionService.createSession("Second");
+        assertThat(sessionService.countSessions()).isEqualTo(1);
+
+        assertThat(sessionService.getSession(first.getId())).hasValueSatisfying(restored -> {
+            assertThat(restored.getName()).isEqualTo("First");
+            assertThat(restored.getMessages()).extracting(Message::getContent).containsExactly("Hello");
+        });
+    }
+
+    @Test
+    void deletingAnEvictedSessionDeletesItForGood() {
+        ChatSession first = sessionService.createSession("First");
+        sessionService.createSession("Second");
+
+        assertThat(sessionService.deleteSession(first.getId())).isTrue();
+        assertThat(sessionService.getSession(first.getId())).isEmpty();
+    }
+
+    @Test
+    void versionTagDoesNotRepeatAfterRestart() {
+        SessionService restarted = new SessionService(3_600_000, 1 << 20, 1,
+                new StaticListableBeanFactory().getBeanProvider(SessionEvictionListener.class),
+                journal, new SimpleMeterRegistry());
+
+        assertThat(restarted.getVersion()).isEqualTo(sessionService.getVersion());
+        assertThat(restarted.getVersionTag()).isNotEqualTo(sessionService.getVersionTag());
+    }
+
+    @Test
+    void revisionTagDoesNotRepeatAfterRestore() {
+        ChatSession first = sessionService.createSession("First");
+        String evictedTag = first.getRevisionTag();
+        sessionService.createSession("Second");
+
+        assertThat(sessionService.getSession(first.getId())).hasValueSatisfying(restored ->
+                assertThat(restored.getRevisionTag()).isNotEqualTo(evictedTag));
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.mcpclient.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.http.codec.ServerSentEvent;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SseEventEncoderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "",
+            "plain text",
+            "say \"hello\"",
+            "back\\slash and \\\"escaped\\\" quotes",
+            "line\nbreak\r\ncarriage\ttab\bbackspace\fform feed",
+            "\u0000\u0001\u001f\u007f",
+            "emoji 😀 and 𝄞 clef",
+            "line separator \u2028 paragraph separator \u2029",
+            "unicode café 中文 \u200b"
+    })
+    void chunkMatchesJackson(String content) throws Exception {
+        String encoded = SseEventEncoder.chunk(content).data();
+
+        assertThat(objectMapper.readTree(encoded)).isEqualTo(jackson(content));
+    }
+
+    @Test
+    void everyBmpCharacterMatchesJackson() throws Exception {
+        for (char c = 0; c < Character.MAX_VALUE; c++) {
+            String content = "a" + c + "b";
+            JsonNode decoded = objectMapper.readTree(SseEventEncoder.stringObject("{\"content\": \"", content));
+            assertThat(decoded).as("U+%04X", (int) c).isEqualTo(jackson(content));
+        }
+    }
+
+    @Test
+    void lineAndParagraphSeparatorsAreEscaped() {
+        String encoded = SseEventEncoder.chunk("a\u2028b\u2029c").data();
+
+        assertThat(encoded).isEqualTo("{\"content\": \"a\\u2028b\\u2029c\"}");
+    }
+
+    @Test
+    void controlCharactersUseShortEscapesWhereJsonHasThem() {
+        String encoded = SseEventEncoder.chunk("\"\\\n\r\t\b\f\u0001").data();
+
+        assertThat(encoded).isEqualTo("{\"content\": \"\\\"\\\\\\n\\r\\t\\b\\f\\u0001\"}");
+    }
+
+    @Test
+    void busyCarriesRetryAfter() throws Exception {
+        ServerSentEvent<String> event = SseEventEncoder.busy("Busy \"now\"", 7);
+
+        assertThat(event.event()).isEqualTo(SseEventEncoder.BUSY);
+        JsonNode data = objectMapper.readTree(event.data());
+        assertThat(data.get("error").asText()).isEqualTo("Busy \"now\"");
+        assertThat(data.get("retryAfter").asLong()).isEqualTo(7);
+    }
+
+    @Test
+    void nullIsEncodedAsEmptyString() throws Exception {
+        assertThat(objectMapper.readTree(SseEventEncoder.chunk(null).data())).isEqualTo(jackson(""));
+    }
+
+    private JsonNode jackson(String content) throws Exception {
+        return objectMapper.readTree(objectMapper.writeValueAsString(Collections.singletonMap("content", content)));
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.mcpclient.service;
+
+import com.example.mcpclient.model.McpTool;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ToolResultCacheTest {
+
+    private static final String SCOPE = ToolResultCache.scopeFor("session-1", null);
+
+    private ToolResultCache cache;
+
+    @BeforeEach
+    void setUp() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("mcp.result-cache.ttl[get_patient_details]", "5m");
+        cache = new ToolResultCache(true, 1 << 20, environment, new ObjectMapper(), new SimpleMeterRegistry());
+        cache.updateSchemas(List.of(new McpTool("get_patient_details", "Patient details", Map.of(
+                "type", "object",
+                "properties", Map.of(
+                        "patient_id", Map.of("type", "string"),
+                        "limit", Map.of("type", List.of("integer", "null")),
+                        "weights", Map.of("type", "array", "items", Map.of("type", "number")))))));
+    }
+
+    @Test
+    void stringArgumentsAreKeptExactlyAsSent() {
+        cache.put(SCOPE, "get_patient_details", Map.of("patient_id", "042"), "Patient 042");
+
+        assertThat(cache.get(SCOPE, "get_patient_details", Map.of("patient_id", "042"))).contains("Patient 042");
+        assertThat(cache.get(SCOPE, "get_patient_details", Map.of("patient_id", "42"))).isEmpty();
+        assertThat(cache.get(SCOPE, "get_patient_details", Map.of("patient_id", " 042"))).isEmpty();
+        assertThat(cache.get(SCOPE, "get_patient_details", Map.of("patient_id", 42))).isEmpty();
+    }
+
+    @Test
+    void numbersTheSchemaDeclaresNumericShareAKey() {
+        cache.put(SCOPE, "get_patient_details", Map.of("patient_id", "p1", "limit", 10, "weights", List.of(1.5, 2)),
+                "Patient p1");
+
+        assertThat(cache.get(SCOPE, "get_patient_details",
+                Map.of("limit", 10.0, "weights", List.of(1.50, 2.0), "patient_id", "p1"))).contains("Patient p1");
+        assertThat(cache.get(SCOPE, "get_patient_details",
+                Map.of("limit", "10", "weights", List.of(1.5, 2), "patient_id", "p1"))).isEmpty();
+    }
+
+    @Test
+    void numbersWithoutANumericSchemaAreKeptAsSent() {
+        cache.updateSchemas(List.of(new McpTool("get_patient_details", "Patient details", null)));
+        cache.put(SCOPE, "get_patient_details", Map.of("limit", 10), "ten");
+
+        assertThat(cache.get(SCOPE, "get_patient_details", Map.of("limit", 10))).contains("ten");
+        assertThat(cache.get(SCOPE, "get_patient_details", Map.of("limit", 10.0))).isEmpty();
+    }
+
+    @Test
+    void scopesAreIsolated() {
+        cache.put(SCOPE, "get_patient_details", Map.of("patient_id", "p1"), "Patient p1");
+
+        assertThat(cache.get(ToolResultCache.scopeFor("session-2", null), "get_patient_details",
+                Map.of("patient_id", "p1"))).isEmpty();
+    }
+}